@@ -39,14 +39,20 @@ import android.widget.TextView;
 
 import com.agustinprats.myhrv.R;
 import com.agustinprats.myhrv.model.CoherenceZone;
-import com.agustinprats.myhrv.model.RrIntervalList;
+import com.agustinprats.myhrv.model.GeometricMetrics;
+import com.agustinprats.myhrv.model.MetricRegistry;
+import com.agustinprats.myhrv.model.MetricsSnapshot;
+import com.agustinprats.myhrv.model.TimeDomainMetrics;
 import com.agustinprats.myhrv.service.HeartRateService;
 import com.agustinprats.myhrv.util.Utils;
+import com.agustinprats.myhrv.view.PoincareView;
 import com.agustinprats.myhrv.view.ProgressWheel;
+import com.agustinprats.myhrv.view.SpectrogramView;
 
 import org.achartengine.ChartFactory;
 import org.achartengine.GraphicalView;
 import org.achartengine.chart.PointStyle;
+import org.achartengine.model.TimeSeries;
 import org.achartengine.model.XYMultipleSeriesDataset;
 import org.achartengine.renderer.XYMultipleSeriesRenderer;
 import org.achartengine.renderer.XYSeriesRenderer;
@@ -62,12 +68,26 @@ public class BasicMonitorFragment extends MonitorFragment {
     /** SharedPreferences key used to save if the instructions are visible. */
     public static final String INSTRUCTIONS_VISIBLE_KEY = "pref_instructions_visible_key";
 
+    /** SharedPreferences key used to save if the spectrogram is visible. */
+    public static final String SPECTROGRAM_VISIBLE_KEY = "pref_spectrogram_visible_key";
+
+    /** SharedPreferences key used to save if the Poincaré plot is visible. */
+    public static final String POINCARE_VISIBLE_KEY = "pref_poincare_visible_key";
+
+    /** SharedPreferences key used to save if the HRV metrics are visible. */
+    public static final String METRICS_VISIBLE_KEY = "pref_metrics_visible_key";
+
+    /** Optional metrics displayed in the HRV metrics text. */
+    private static final int[] TEXT_METRICS = { MetricRegistry.METRIC_TIME_DOMAIN, MetricRegistry.METRIC_GEOMETRIC,
+            MetricRegistry.METRIC_POINCARE, MetricRegistry.METRIC_SPECTRUM, MetricRegistry.METRIC_DFA,
+            MetricRegistry.METRIC_SAMPLE_ENTROPY };
+
     // Glass and wheel constants
     public static final int GLASS_FADIN_DURATION = 350;
     public static final float GLASS_FADIN_INIT = 0.75f;
     private final static int WHEEL_MIN = 0;
     private final static int WHEEL_MAX = 360;
-    private final static int CHART_SPAN = 20000;
+    private final static float LOW_QUALITY_ALPHA = 0.4f;
 
     // UI
     private ImageView _glassImage;
@@ -77,19 +97,86 @@ public class BasicMonitorFragment extends MonitorFragment {
     private LinearLayout _chartLayout;
     private TextView _zoneText;
     private RelativeLayout _instructionsLayout;
+    private SpectrogramView _spectrogramView;
+    private PoincareView _poincareView;
+    private TextView _metricsText;
     protected TextView _heartRateText;
 
+    // Subscriptions to the metrics of the optional views
+    private boolean _spectrogramSubscribed = false;
+    private boolean _poincareSubscribed = false;
+    private boolean _metricsSubscribed = false;
+
     // Task to update the wheel periodically in the background
     private AsyncTask<Integer, Integer, Void> _updateWheelProgressTask = null;
 
     // Charts
     private GraphicalView _chart;
     private XYMultipleSeriesRenderer _renderer;
+    private TimeSeries _heartRateSeries = new TimeSeries("");
 
     @Override
     public void onResume() {
         super.onResume();
 
+        updateMetricSubscriptions(getMainActivity().getHeartRateService());
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+
+        updateMetricSubscriptions(getMainActivity().getHeartRateService());
+    }
+
+    @Override
+    public void onHeartRateServiceBinded(final HeartRateService service) {
+        super.onHeartRateServiceBinded(service);
+
+        updateMetricSubscriptions(service);
+    }
+
+    @Override
+    public void onHeartRateServiceUnbinded(final HeartRateService service) {
+
+        // The views are no longer updated from this service
+        _spectrogramSubscribed = updateMetricSubscription(service, MetricRegistry.METRIC_SPECTROGRAM, _spectrogramSubscribed, false);
+        _poincareSubscribed = updateMetricSubscription(service, MetricRegistry.METRIC_POINCARE, _poincareSubscribed, false);
+        _metricsSubscribed = updateMetricSubscriptions(service, TEXT_METRICS, _metricsSubscribed, false);
+        super.onHeartRateServiceUnbinded(service);
+    }
+
+    /** Subscribes to the metrics of the visible views while in foreground and unsubscribes from the rest,
+     *  so the service only calculates what is displayed. */
+    private void updateMetricSubscriptions(HeartRateService service) {
+
+        if (service == null || _spectrogramView == null)
+            return;
+
+        _spectrogramSubscribed = updateMetricSubscription(service, MetricRegistry.METRIC_SPECTROGRAM, _spectrogramSubscribed,
+                _inForeground && _spectrogramView.getVisibility() == View.VISIBLE);
+        _poincareSubscribed = updateMetricSubscription(service, MetricRegistry.METRIC_POINCARE, _poincareSubscribed,
+                _inForeground && _poincareView.getVisibility() == View.VISIBLE);
+        _metricsSubscribed = updateMetricSubscriptions(service, TEXT_METRICS, _metricsSubscribed,
+                _inForeground && _metricsText.getVisibility() == View.VISIBLE);
+    }
+
+    /** Subscribes to or unsubscribes from a metric if needed. Returns the new subscription state. */
+    private static boolean updateMetricSubscription(HeartRateService service, int metric, boolean subscribed, boolean needed) {
+
+        if (needed && !subscribed)
+            service.subscribeMetric(metric);
+        else if (!needed && subscribed)
+            service.unsubscribeMetric(metric);
+        return needed;
+    }
+
+    /** Subscribes to or unsubscribes from several metrics together if needed. Returns the new subscription state. */
+    private static boolean updateMetricSubscriptions(HeartRateService service, int[] metrics, boolean subscribed, boolean needed) {
+
+        for (int metric : metrics)
+            updateMetricSubscription(service, metric, subscribed, needed);
+        return needed;
     }
 
     @Override
@@ -113,6 +200,9 @@ public class BasicMonitorFragment extends MonitorFragment {
         _instructionsLayout = (RelativeLayout) rootView.findViewById(R.id.instructionsLayout);
         _chartLayout = (LinearLayout) rootView.findViewById(R.id.chart);
         _glassImage = (ImageView) rootView.findViewById(R.id.glassImage);
+        _spectrogramView = (SpectrogramView) rootView.findViewById(R.id.spectrogramView);
+        _poincareView = (PoincareView) rootView.findViewById(R.id.poincareView);
+        _metricsText = (TextView) rootView.findViewById(R.id.metricsText);
         _glassImageId = -1;
         _heartRateText.setTypeface(_digitalTypeface);
 
@@ -127,6 +217,36 @@ public class BasicMonitorFragment extends MonitorFragment {
             _instructionsLayout.setVisibility(View.GONE);
         }
 
+        Boolean spectrogramVisible = sharedPref.getBoolean(SPECTROGRAM_VISIBLE_KEY, false);
+        if (spectrogramVisible) {
+
+            _spectrogramView.setVisibility(View.VISIBLE);
+        }
+        else {
+
+            _spectrogramView.setVisibility(View.GONE);
+        }
+
+        Boolean poincareVisible = sharedPref.getBoolean(POINCARE_VISIBLE_KEY, false);
+        if (poincareVisible) {
+
+            _poincareView.setVisibility(View.VISIBLE);
+        }
+        else {
+
+            _poincareView.setVisibility(View.GONE);
+        }
+
+        Boolean metricsVisible = sharedPref.getBoolean(METRICS_VISIBLE_KEY, false);
+        if (metricsVisible) {
+
+            _metricsText.setVisibility(View.VISIBLE);
+        }
+        else {
+
+            _metricsText.setVisibility(View.GONE);
+        }
+
         return rootView;
     }
 
@@ -137,9 +257,8 @@ public class BasicMonitorFragment extends MonitorFragment {
         removeChart();
         _renderer = newTimeRenderer();
 
-        HeartRateService service = getMainActivity().getHeartRateService();
         XYMultipleSeriesDataset heartRateDataset = new XYMultipleSeriesDataset();
-        heartRateDataset.addSeries(service.getIntervals().getHeartRateSeries());
+        heartRateDataset.addSeries(_heartRateSeries);
 
         _chart = ChartFactory.getCubeLineChartView(getMainActivity(), heartRateDataset, _renderer, 0.2f);
         _chartLayout.addView(_chart);
@@ -194,15 +313,20 @@ public class BasicMonitorFragment extends MonitorFragment {
 
         if (isChartVisible()) {
 
-            long minX = System.currentTimeMillis() - CHART_SPAN;
+            HeartRateService service = getMainActivity().getHeartRateService();
+            MetricsSnapshot snapshot = service.getSnapshot();
+
+            long minX = System.currentTimeMillis() - snapshot.getChartSpan();
             if (minX < 0)
                 minX = 0;
             _renderer.setXAxisMin(minX);
 
-            HeartRateService service = getMainActivity().getHeartRateService();
-            RrIntervalList list = service.getIntervals();
-            _renderer.setYAxisMax(list.getInstantMaxHeartRate());
-            _renderer.setYAxisMin(list.getInstantMinHeartRate());
+            _renderer.setYAxisMax(snapshot.getChartMaxHeartRate());
+            _renderer.setYAxisMin(snapshot.getChartMinHeartRate());
+
+            _heartRateSeries.clear();
+            for (int i = 0; i < snapshot.getChartSize(); i++)
+                _heartRateSeries.add(snapshot.getChartTimestamp(i), snapshot.getChartHeartRate(i));
             _chart.repaint();
 
             updateCoherenceZone();
@@ -218,7 +342,7 @@ public class BasicMonitorFragment extends MonitorFragment {
     private void updateCoherenceZone() {
 
         HeartRateService service = getMainActivity().getHeartRateService();
-        CoherenceZone coherenceZone = service.getIntervals().getCoherenceZone();
+        CoherenceZone coherenceZone = service.getSnapshot().getCoherenceZone();
         if (coherenceZone != null) {
 
             updateGlass(coherenceZone.getGlassImage());
@@ -306,12 +430,11 @@ public class BasicMonitorFragment extends MonitorFragment {
     }
 
     /** Called when new RR intervals are received
-     *  @intervals All intervals received while the device's been connected
-     *  @count Number of RR intervals that are new. They can be found at the end of the list */
+     *  @snapshot Metrics after adding the new intervals. The new intervals are in getNewRrIntervals() */
     @Override
-    public void onHeartRateServiceNewRrIntervals(final RrIntervalList intervals, final int count) {
+    public void onHeartRateServiceNewRrIntervals(final MetricsSnapshot snapshot) {
 
-        super.onHeartRateServiceNewRrIntervals(intervals, count);
+        super.onHeartRateServiceNewRrIntervals(snapshot);
         if (isAdded() && _inForeground)
             getMainActivity().runOnUiThread(new Runnable() {
 
@@ -321,28 +444,75 @@ public class BasicMonitorFragment extends MonitorFragment {
                     updateHeartRate();
                     updateWheel();
                     updateChart();
+                    updateSpectrogram();
+                    updatePoincare();
+                    updateMetrics();
+                    updateSignalQuality();
                 }
             });
     }
 
+    /** Greys out the metrics if the signal quality of the last minute is low. */
+    public void updateSignalQuality() {
+
+        HeartRateService service = getMainActivity().getHeartRateService();
+        float alpha = service.getSnapshot().getSignalQuality().isGood() ? 1f : LOW_QUALITY_ALPHA;
+        _heartRateText.setAlpha(alpha);
+        _wheel.setAlpha(alpha);
+        _spectrogramView.setAlpha(alpha);
+        _poincareView.setAlpha(alpha);
+        _metricsText.setAlpha(alpha);
+    }
+
     /** Updates the heart rate text from the heart rate service. */
     public void updateHeartRate() {
 
         HeartRateService service = getMainActivity().getHeartRateService();
-        RrIntervalList list = service.getIntervals();
-        setHeartRate(list.getInstantHeartRate());
+        setHeartRate(service.getSnapshot().getInstantHeartRate());
     }
 
     /** Updates the coherence wheel from from heart rate service. */
     public void updateWheel() {
 
         HeartRateService service = getMainActivity().getHeartRateService();
-        RrIntervalList list = service.getIntervals();
-
-        int progress = getWheelProgress(list.getInstantCoherence());
+        int progress = getWheelProgress(service.getSnapshot().getInstantCoherence());
         setWheelProgress(progress);
     }
 
+    /** Updates the spectrogram from the heart rate service if it's visible. */
+    public void updateSpectrogram() {
+
+        if (_spectrogramView.getVisibility() == View.VISIBLE) {
+
+            HeartRateService service = getMainActivity().getHeartRateService();
+            _spectrogramView.setFrame(service.getSnapshot().getSpectrogram());
+        }
+    }
+
+    /** Updates the Poincaré plot from the heart rate service if it's visible. */
+    public void updatePoincare() {
+
+        if (_poincareView.getVisibility() == View.VISIBLE) {
+
+            HeartRateService service = getMainActivity().getHeartRateService();
+            _poincareView.setSnapshot(service.getSnapshot());
+        }
+    }
+
+    /** Updates the HRV metrics text from the heart rate service if it's visible. */
+    public void updateMetrics() {
+
+        if (_metricsText.getVisibility() == View.VISIBLE) {
+
+            MetricsSnapshot snapshot = getMainActivity().getHeartRateService().getSnapshot();
+            TimeDomainMetrics timeDomain = snapshot.getTimeDomainMetrics();
+            GeometricMetrics geometric = snapshot.getGeometricMetrics();
+            _metricsText.setText(getString(R.string.metrics_format, timeDomain.getSDNN(), timeDomain.getRMSSD(),
+                    timeDomain.getPNN50(), geometric.getTriangularIndex(), geometric.getTINN(), snapshot.getSD1SD2Ratio(),
+                    snapshot.getFrequencyMetrics().getLFHFRatio(), snapshot.getAlpha1(), snapshot.getSampleEntropy()));
+        }
+    }
+
     /** Converts a percentage to a wheel progress value. */
     private int getWheelProgress(double percentage) {
 
@@ -427,6 +597,51 @@ public class BasicMonitorFragment extends MonitorFragment {
                 sharedPref.edit().putBoolean(INSTRUCTIONS_VISIBLE_KEY, false).commit();
                 getMainActivity().invalidateOptionsMenu();
                 break;
+            case R.id.menu_show_spectrogram:
+
+                _spectrogramView.setVisibility(View.VISIBLE);
+                sharedPref.edit().putBoolean(SPECTROGRAM_VISIBLE_KEY, true).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                updateSpectrogram();
+                break;
+            case R.id.menu_hide_spectrogram:
+
+                _spectrogramView.setVisibility(View.GONE);
+                sharedPref.edit().putBoolean(SPECTROGRAM_VISIBLE_KEY, false).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                break;
+            case R.id.menu_show_poincare:
+
+                _poincareView.setVisibility(View.VISIBLE);
+                sharedPref.edit().putBoolean(POINCARE_VISIBLE_KEY, true).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                updatePoincare();
+                break;
+            case R.id.menu_hide_poincare:
+
+                _poincareView.setVisibility(View.GONE);
+                sharedPref.edit().putBoolean(POINCARE_VISIBLE_KEY, false).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                break;
+            case R.id.menu_show_metrics:
+
+                _metricsText.setVisibility(View.VISIBLE);
+                sharedPref.edit().putBoolean(METRICS_VISIBLE_KEY, true).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                updateMetrics();
+                break;
+            case R.id.menu_hide_metrics:
+
+                _metricsText.setVisibility(View.GONE);
+                sharedPref.edit().putBoolean(METRICS_VISIBLE_KEY, false).commit();
+                getMainActivity().invalidateOptionsMenu();
+                updateMetricSubscriptions(getMainActivity().getHeartRateService());
+                break;
         }
         return true;
     }
@@ -445,5 +660,14 @@ public class BasicMonitorFragment extends MonitorFragment {
             menu.findItem(R.id.menu_show_instructions).setVisible(true);
             menu.findItem(R.id.menu_hide_instructions).setVisible(false);
         }
+        boolean spectrogramVisible = _spectrogramView.getVisibility() == View.VISIBLE;
+        menu.findItem(R.id.menu_show_spectrogram).setVisible(!spectrogramVisible);
+        menu.findItem(R.id.menu_hide_spectrogram).setVisible(spectrogramVisible);
+        boolean poincareVisible = _poincareView.getVisibility() == View.VISIBLE;
+        menu.findItem(R.id.menu_show_poincare).setVisible(!poincareVisible);
+        menu.findItem(R.id.menu_hide_poincare).setVisible(poincareVisible);
+        boolean metricsVisible = _metricsText.getVisibility() == View.VISIBLE;
+        menu.findItem(R.id.menu_show_metrics).setVisible(!metricsVisible);
+        menu.findItem(R.id.menu_hide_metrics).setVisible(metricsVisible);
     }
 }
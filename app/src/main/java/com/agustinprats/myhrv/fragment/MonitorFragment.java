@@ -45,7 +45,7 @@ import com.agustinprats.myhrv.MainActivity;
 import com.agustinprats.myhrv.R;
 import com.agustinprats.myhrv.adapter.HeartRateDeviceListAdapter;
 import com.agustinprats.myhrv.model.HeartRateDevice;
-import com.agustinprats.myhrv.model.RrIntervalList;
+import com.agustinprats.myhrv.model.MetricsSnapshot;
 import com.agustinprats.myhrv.service.HeartRateService;
 import com.agustinprats.myhrv.service.HeartRateServiceListener;
 import com.agustinprats.myhrv.util.Utils;
@@ -408,13 +408,12 @@ public abstract class MonitorFragment extends Fragment implements HeartRateServi
         return buf.toString();
     }
 
-    /** Starts so many heart beat animations as specified in the parameter @count.
-     *  Each animation duration is based on the RR intervals
-     *  passed in the @intervals parameter */
-    private void heartBeats(RrIntervalList intervals, int count) {
+    /** Starts so many heart beat animations as R-R intervals are passed in the @rrIntervals parameter.
+     *  Each animation duration is based on the R-R interval */
+    private void heartBeats(int[] rrIntervals) {
 
         heartBeat();
-        for (int i = intervals.size() - count; i < intervals.size(); i++) {
+        for (int i = 0; i < rrIntervals.length; i++) {
 
             final Handler handler = new Handler();
             handler.postDelayed(new Runnable() {
@@ -423,7 +422,7 @@ public abstract class MonitorFragment extends Fragment implements HeartRateServi
 
                     heartBeat();
                 }
-            }, intervals.get(i).getRRInterval());
+            }, rrIntervals[i]);
         }
     }
 
@@ -537,9 +536,8 @@ public abstract class MonitorFragment extends Fragment implements HeartRateServi
     }
 
     /** Called when new RR intervals are received
-     *  @intervals All intervals received while the device's been connected
-     *  @count Number of RR intervals that are new. They can be found at the end of the list */
-    public void onHeartRateServiceNewRrIntervals(final RrIntervalList intervals, final int count) {
+     *  @snapshot Metrics after adding the new intervals. The new intervals are in getNewRrIntervals() */
+    public void onHeartRateServiceNewRrIntervals(final MetricsSnapshot snapshot) {
 
         if (isAdded() && _inForeground)
             getMainActivity().runOnUiThread(new Runnable() {
@@ -550,8 +548,8 @@ public abstract class MonitorFragment extends Fragment implements HeartRateServi
                     if (getStatus() == STATUS_DISCONNECTED || getStatus() == STATUS_CONNECTING) {
                         setStatus(STATUS_CONNECTED);
                     }
-                    heartBeats(intervals, count);
-                    _timeText.setText(Utils.getDigitalDuration(intervals.getMeasuredTime()/1000));
+                    heartBeats(snapshot.getNewRrIntervals());
+                    _timeText.setText(Utils.getDigitalDuration(snapshot.getMeasuredTime()/1000));
                 }
             });
     }
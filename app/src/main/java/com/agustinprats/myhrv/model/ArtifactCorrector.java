@@ -0,0 +1,262 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Corrects artifacts of the R-R intervals instead of discarding them.
+ *
+ * Each interval is held until the next one arrives, so it's classified knowing its neighbours.
+ * An interval is normal if it's closer than a threshold to the median of the last REFERENCE_SIZE
+ * corrected intervals. The threshold is THRESHOLD_MADS median absolute deviations, bounded
+ * between MIN_THRESHOLD and MAX_THRESHOLD times the median. Otherwise it's corrected as:
+ *  - Missed beat: a long interval that is a multiple of the median is split.
+ *  - Extra beat: a short interval that adds up to the median with the next one is merged with it.
+ *  - Ectopic beat: a short and long pair, in any order, that adds up to two medians is split evenly.
+ *  - Long or short beat: any other interval is replaced by the interpolation of its neighbours.
+ * Every case except replacing preserves the measured time. Corrections that would produce intervals
+ * out of the valid range aren't applied, so the output is as valid as the input. After MAX_CORRECTIONS_IN_A_ROW the
+ * rhythm is considered to have changed, so the interval is accepted and the reference restarts.
+ *
+ * Corrected intervals are read from getCount(), getTimestamp(), getRRInterval() and getArtifacts()
+ * after every call to add(). Nothing is allocated after construction.
+ */
+class ArtifactCorrector {
+
+    /** Number of corrected intervals whose median is the reference. */
+    static final int REFERENCE_SIZE = 11;
+
+    /** Min number of intervals in the reference to correct artifacts. */
+    private static final int MIN_REFERENCE_SIZE = 5;
+
+    /** Threshold in median absolute deviations. */
+    private static final int THRESHOLD_MADS = 4;
+
+    // Threshold bounds relative to the median
+    private static final double MIN_THRESHOLD = 0.2;
+    private static final double MAX_THRESHOLD = 0.4;
+
+    /** Max number of intervals a missed beat is split into. */
+    private static final int MAX_SPLIT = 3;
+
+    /** Corrections in a row that restart the reference. */
+    static final int MAX_CORRECTIONS_IN_A_ROW = 3;
+
+    // Interval held until the next one arrives
+    private boolean _hasPending = false;
+    private long _pendingTimestamp = 0;
+    private int _pendingRrInterval = 0;
+
+    /** Median and deviation of the last corrected intervals. */
+    private final SlidingMedian _reference = new SlidingMedian(REFERENCE_SIZE);
+
+    /** Last interval produced. */
+    private int _last = 0;
+
+    /** Number of intervals corrected in a row. */
+    private int _correctionsInARow = 0;
+
+    // Intervals produced by the last call to add()
+    private final long[] _timestamps = new long[MAX_SPLIT];
+    private final int[] _rrIntervals = new int[MAX_SPLIT];
+    private final int[] _artifacts = new int[MAX_SPLIT];
+    private int _count = 0;
+
+    /** Removes the pending interval and the reference. */
+    void clear() {
+
+        _hasPending = false;
+        _reference.clear();
+        _last = 0;
+        _correctionsInARow = 0;
+        _count = 0;
+    }
+
+    /**
+     * Adds a valid interval and corrects the pending one.
+     * @param timestamp Timestamp of the end of the interval
+     * @param rrInterval R-R interval in milli seconds
+     */
+    void add(long timestamp, int rrInterval) {
+
+        _count = 0;
+        if (_hasPending && correct(timestamp, rrInterval))
+            _hasPending = false;
+        else
+            hold(timestamp, rrInterval);
+    }
+
+    /**
+     * Corrects the pending interval knowing the next one.
+     * @param timestamp Timestamp of the end of the next interval
+     * @param next Next R-R interval in milli seconds
+     * @return True if the next interval was corrected together with the pending one
+     */
+    private boolean correct(long timestamp, int next) {
+
+        long pendingTimestamp = _pendingTimestamp;
+        int current = _pendingRrInterval;
+        if (_reference.size() < MIN_REFERENCE_SIZE) {
+
+            emit(pendingTimestamp, current, RrIntervalList.ARTIFACT_NONE);
+            return false;
+        }
+
+        double median = _reference.getMedian();
+        double threshold = getThreshold(median);
+        double deviation = current - median;
+        if (Math.abs(deviation) <= threshold) {
+
+            _correctionsInARow = 0;
+            emit(pendingTimestamp, current, RrIntervalList.ARTIFACT_NONE);
+            return false;
+        }
+
+        if (++_correctionsInARow > MAX_CORRECTIONS_IN_A_ROW) {
+
+            // The rhythm changed. It becomes the new reference
+            _correctionsInARow = 0;
+            _reference.clear();
+            emit(pendingTimestamp, current, RrIntervalList.ARTIFACT_NONE);
+            return false;
+        }
+
+        boolean nextShort = next - median < -threshold;
+        boolean nextLong = next - median > threshold;
+        int pair = current + next;
+        boolean pairOfTwo = Math.abs(pair - 2 * median) <= 2 * threshold;
+        if (deviation < 0) {
+
+            if (Math.abs(pair - median) <= threshold && isValidSplit(pair, 1)) {
+
+                // Extra beat: both intervals are a single one
+                emit(timestamp, pair, RrIntervalList.ARTIFACT_EXTRA);
+                return true;
+            }
+            else if (nextLong && pairOfTwo && isValidSplit(pair, 2)) {
+
+                splitPair(timestamp, pair);
+                return true;
+            }
+            else {
+
+                emit(pendingTimestamp, interpolate(next, nextShort || nextLong, median), RrIntervalList.ARTIFACT_SHORT);
+            }
+        }
+        else {
+
+            int parts = Math.min(MAX_SPLIT, (int) Math.round(current / median));
+            if (parts >= 2 && Math.abs((double) current / parts - median) <= threshold && isValidSplit(current, parts)) {
+
+                // Missed beats: the interval holds several ones
+                long end = pendingTimestamp - current;
+                int remaining = current;
+                for (int i = parts; i > 0; i--) {
+
+                    int part = remaining / i;
+                    remaining -= part;
+                    end += part;
+                    emit(end, part, RrIntervalList.ARTIFACT_MISSED);
+                }
+            }
+            else if (nextShort && pairOfTwo && isValidSplit(pair, 2)) {
+
+                splitPair(timestamp, pair);
+                return true;
+            }
+            else {
+
+                emit(pendingTimestamp, interpolate(next, nextShort || nextLong, median), RrIntervalList.ARTIFACT_LONG);
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if splitting an interval in the specified number of parts gives valid intervals. */
+    private static boolean isValidSplit(int rrInterval, int parts) {
+
+        // Parts differ at most by one milli second
+        int shortest = rrInterval / parts;
+        int longest = shortest + (rrInterval % parts == 0 ? 0 : 1);
+        return !RrInterval.isOutOfRange(shortest) && !RrInterval.isOutOfRange(longest);
+    }
+
+    /** Splits an ectopic pair of intervals into two equal ones. */
+    private void splitPair(long timestamp, int pair) {
+
+        int first = pair / 2;
+        emit(timestamp - (pair - first), first, RrIntervalList.ARTIFACT_ECTOPIC);
+        emit(timestamp, pair - first, RrIntervalList.ARTIFACT_ECTOPIC);
+    }
+
+    /** Returns the interpolation between the last interval and the next one, or the median if the next one is abnormal. */
+    private int interpolate(int next, boolean nextAbnormal, double median) {
+
+        return nextAbnormal ? (int) Math.round(median) : (_last + next + 1) / 2;
+    }
+
+    /** Holds an interval until the next one arrives. */
+    private void hold(long timestamp, int rrInterval) {
+
+        _hasPending = true;
+        _pendingTimestamp = timestamp;
+        _pendingRrInterval = rrInterval;
+    }
+
+    /** Produces a corrected interval and adds it to the reference. */
+    private void emit(long timestamp, int rrInterval, int artifacts) {
+
+        _timestamps[_count] = timestamp;
+        _rrIntervals[_count] = rrInterval;
+        _artifacts[_count] = artifacts;
+        _count++;
+        _last = rrInterval;
+        _reference.add(rrInterval);
+    }
+
+    /** Returns the threshold in milli seconds for the specified reference median. */
+    private double getThreshold(double median) {
+
+        double mad = _reference.getMad();
+        return Math.max(MIN_THRESHOLD * median, Math.min(MAX_THRESHOLD * median, THRESHOLD_MADS * mad));
+    }
+
+    /** Returns the number of intervals produced by the last call to add(). */
+    int getCount() {
+
+        return _count;
+    }
+
+    /** Returns the timestamp of a produced interval. */
+    long getTimestamp(int position) {
+
+        return _timestamps[position];
+    }
+
+    /** Returns a produced interval in milli seconds. */
+    int getRRInterval(int position) {
+
+        return _rrIntervals[position];
+    }
+
+    /** Returns the ARTIFACT_ flags of a produced interval. */
+    int getArtifacts(int position) {
+
+        return _artifacts[position];
+    }
+}
@@ -23,6 +23,7 @@ import android.graphics.Color;
 import com.agustinprats.myhrv.R;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,6 +40,9 @@ import java.util.List;
  *      Medium Low   = [35, 50]
  *      High         = [50, 65]
  *      Very High    = [80 - 100]
+ *
+ * Zones are immutable and shared by every session. The hits counted before moving to a new zone
+ * belong to each session's CoherenceZoneTracker.
  */
 public class CoherenceZone {
 
@@ -53,13 +57,33 @@ public class CoherenceZone {
     /**
      * All the zen zones available. Sorted from lower to higher.
      */
-    private static final List<CoherenceZone> _list = Arrays.asList(
+    private static final List<CoherenceZone> _list = Collections.unmodifiableList(Arrays.asList(
             new CoherenceZone(0, 0, R.string.veryLow, R.color.red, Color.WHITE, R.drawable.ic_red, R.drawable.glass_red, R.drawable.round_red, R.color.red),
             new CoherenceZone(1, 20, R.string.low, R.color.orange, Color.WHITE, R.drawable.ic_orange, R.drawable.glass_orange, R.drawable.round_orange, R.color.orange),
             new CoherenceZone(2, 35, R.string.mediumLow, R.color.yellow, Color.WHITE, R.drawable.ic_yellow, R.drawable.glass_yellow, R.drawable.round_yellow, R.color.yellow),
             new CoherenceZone(3, 50, R.string.mediumHigh, R.color.green, Color.WHITE, R.drawable.ic_green, R.drawable.glass_green, R.drawable.round_green, R.color.green),
             new CoherenceZone(4, 65, R.string.high, R.color.blue_light, Color.WHITE, R.drawable.ic_blue, R.drawable.glass_blue_light, R.drawable.round_blue_light, R.color.blue_light),
-            new CoherenceZone(5, 80, R.string.verHigh, R.color.blue, Color.WHITE, R.drawable.ic_blue, R.drawable.glass_blue, R.drawable.round_blue, R.color.blue));
+            new CoherenceZone(5, 80, R.string.verHigh, R.color.blue, Color.WHITE, R.drawable.ic_blue, R.drawable.glass_blue, R.drawable.round_blue, R.color.blue)));
+
+    /** Highest coherence value of the lookup table. Higher values belong to the last zone. */
+    private static final int MAX_VALUE = 100;
+
+    /** Index of the zone of every coherence value from 0 to MAX_VALUE. */
+    private static final int[] _lookup = createLookup();
+
+    /** Returns the table with the zone index of every coherence value. */
+    private static int[] createLookup() {
+
+        int[] lookup = new int[MAX_VALUE + 1];
+        int index = 0;
+        for (int value = 0; value <= MAX_VALUE; value++) {
+
+            while (index + 1 < _list.size() && value >= _list.get(index + 1).getMinimumValue())
+                index++;
+            lookup[value] = index;
+        }
+        return lookup;
+    }
 
     /**
      * Calculates a zen zone based on a zen value and the current zone.
@@ -72,35 +96,30 @@ public class CoherenceZone {
      */
     public static CoherenceZone get(int zenValue, CoherenceZone currentZone) {
 
-        for (int i = _list.size() - 1; i >= 0; i--) {
-
-            CoherenceZone coherenceZone = _list.get(i);
-            if (zenValue >= coherenceZone.getMinimumValue()) {
+        if (zenValue < 0)
+            return null;
 
-                if (currentZone != null && i > currentZone.getIndex() && i < _list.size() - 1) {
+        int i = _lookup[Math.min(zenValue, MAX_VALUE)];
+        if (currentZone != null && i > currentZone.getIndex() && i < _list.size() - 1) {
 
-                    return _list.get(currentZone.getIndex()+1);
-                }
-                else if (currentZone != null && i < currentZone.getIndex() && i > 0) {
+            return _list.get(currentZone.getIndex()+1);
+        }
+        else if (currentZone != null && i < currentZone.getIndex() && i > 0) {
 
-                    return _list.get(currentZone.getIndex()-1);
-                }
-                return coherenceZone;
-            }
+            return _list.get(currentZone.getIndex()-1);
         }
-        return null;
+        return _list.get(i);
     }
 
-    private int _index;
-    private int _minimumValue;
-    private int _stringId;
-    private int _color;
-    private int _textColor;
-    private int _icon;
-    private int _glassImage;
-    private int _hits = 0;
-    private int _roundDrawable;
-    private int _notificationColor;
+    private final int _index;
+    private final int _minimumValue;
+    private final int _stringId;
+    private final int _color;
+    private final int _textColor;
+    private final int _icon;
+    private final int _glassImage;
+    private final int _roundDrawable;
+    private final int _notificationColor;
 
     /**
      * Private constructor
@@ -123,7 +142,6 @@ public class CoherenceZone {
         _textColor = oppsiteColor;
         _icon = icon;
         _glassImage = glassImage;
-        _hits = 0;
         _roundDrawable = roundDrawable;
         _notificationColor = notificationColor;
     }
@@ -185,30 +203,6 @@ public class CoherenceZone {
         return _glassImage;
     }
 
-    /**
-     * Increment the number of times in a row that the zen zone is being currently used
-     */
-    public void incrementHits() {
-
-        _hits++;
-    }
-
-    /**
-     * Number of times in a row that the zen zone is being currently used
-     */
-    public int getHits() {
-
-        return _hits;
-    }
-
-    /**
-     * Resets the number of times in a row that the zen zone is being currently used
-     */
-    public void resetHits() {
-
-        _hits = 0;
-    }
-
     /** Returns a colored drawable with round borders */
     public int getRoundDrawable() {
 
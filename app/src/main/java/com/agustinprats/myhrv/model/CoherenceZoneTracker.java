@@ -0,0 +1,191 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import java.util.Arrays;
+
+/**
+ * Coherence zone of a session. To change to a new zone the coherence should stay in it a number of
+ * values in a row. This prevents too much fluctuation between zones leading to confusion.
+ * Each session owns its tracker, so the shared CoherenceZone definitions are never modified.
+ *
+ * The tracker also accumulates the time spent in each zone, the longest streak in each one and a
+ * log of the zone changes, so session summaries cost one value per zone.
+ */
+class CoherenceZoneTracker {
+
+    /** Initial capacity of the transition log. */
+    private static final int INITIAL_TRANSITIONS = 64;
+
+    /** Number of hits before moving to the next coherence zone. */
+    private final int _requiredHits;
+
+    /** Current coherence zone. */
+    private CoherenceZone _zone = null;
+
+    /** Next coherence zone candidate and its number of hits. */
+    private CoherenceZone _next = null;
+    private int _nextHits = 0;
+
+    // Milli seconds of R-R intervals spent in each zone and longest streak in each one, by zone index
+    private final long[] _times = new long[CoherenceZone.getList().size()];
+    private final long[] _longestStreaks = new long[CoherenceZone.getList().size()];
+
+    /** Milli seconds of R-R intervals since the current zone was entered. */
+    private long _streak = 0;
+
+    // Transition log: timestamp of the change and index of the previous and the new zone
+    private long[] _transitionTimestamps = new long[INITIAL_TRANSITIONS];
+    private byte[] _transitionsFrom = new byte[INITIAL_TRANSITIONS];
+    private byte[] _transitionsTo = new byte[INITIAL_TRANSITIONS];
+    private int _transitionCount = 0;
+
+    /**
+     * Constructor
+     * @param requiredHits Number of hits before moving to the next coherence zone
+     */
+    CoherenceZoneTracker(int requiredHits) {
+
+        _requiredHits = requiredHits;
+        clear();
+    }
+
+    /** Goes back to the first coherence zone. */
+    void clear() {
+
+        _zone = CoherenceZone.get(0, null);
+        _next = null;
+        _nextHits = 0;
+        Arrays.fill(_times, 0);
+        Arrays.fill(_longestStreaks, 0);
+        _streak = 0;
+        _transitionCount = 0;
+    }
+
+    /**
+     * Processes the coherence value of a new beat. The interval is charged to the zone the beat ends in.
+     * @param coherence Coherence value between 0 and 100
+     * @param timestamp Timestamp of the beat
+     * @param rrInterval R-R interval ending at the beat in milli seconds
+     * @return True if the current coherence zone changed
+     */
+    boolean update(int coherence, long timestamp, int rrInterval) {
+
+        boolean changed = updateZone(coherence, timestamp);
+        if (changed)
+            _streak = 0;
+
+        int index = _zone.getIndex();
+        _times[index] += rrInterval;
+        _streak += rrInterval;
+        if (_streak > _longestStreaks[index])
+            _longestStreaks[index] = _streak;
+        return changed;
+    }
+
+    /** Selects the zone of a new coherence value. Returns true if the current zone changed. */
+    private boolean updateZone(int coherence, long timestamp) {
+
+        // Select the candidate
+        CoherenceZone candidate = CoherenceZone.get(coherence, _zone);
+        if (_next == null || _next.getIndex() != candidate.getIndex()) {
+
+            _next = candidate;
+            _nextHits = 0;
+        }
+        else {
+
+            _nextHits++;
+        }
+
+        if (_zone == null || (_zone.getIndex() != _next.getIndex() && _nextHits >= _requiredHits)) {
+
+            logTransition(timestamp, _zone, _next);
+            _zone = _next;
+            _next = null;
+            _nextHits = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /** Appends a zone change to the transition log. */
+    private void logTransition(long timestamp, CoherenceZone from, CoherenceZone to) {
+
+        if (_transitionCount == _transitionTimestamps.length) {
+
+            int capacity = _transitionCount << 1;
+            _transitionTimestamps = Arrays.copyOf(_transitionTimestamps, capacity);
+            _transitionsFrom = Arrays.copyOf(_transitionsFrom, capacity);
+            _transitionsTo = Arrays.copyOf(_transitionsTo, capacity);
+        }
+        _transitionTimestamps[_transitionCount] = timestamp;
+        _transitionsFrom[_transitionCount] = (byte) (from != null ? from.getIndex() : -1);
+        _transitionsTo[_transitionCount] = (byte) to.getIndex();
+        _transitionCount++;
+    }
+
+    /** Returns the current coherence zone. */
+    CoherenceZone getZone() {
+
+        return _zone;
+    }
+
+    /** Returns the milli seconds of R-R intervals spent in a zone. */
+    long getTime(int zoneIndex) {
+
+        return _times[zoneIndex];
+    }
+
+    /** Returns the longest continuous milli seconds of R-R intervals spent in a zone. */
+    long getLongestStreak(int zoneIndex) {
+
+        return _longestStreaks[zoneIndex];
+    }
+
+    /** Returns the milli seconds of R-R intervals since the current zone was entered. */
+    long getStreak() {
+
+        return _streak;
+    }
+
+    /** Returns the number of zone changes. */
+    int getTransitionCount() {
+
+        return _transitionCount;
+    }
+
+    /** Returns the timestamp of the beat that changed the zone. */
+    long getTransitionTimestamp(int position) {
+
+        return _transitionTimestamps[position];
+    }
+
+    /** Returns the index of the zone left or -1 if there wasn't one. */
+    int getTransitionFrom(int position) {
+
+        return _transitionsFrom[position];
+    }
+
+    /** Returns the index of the zone entered. */
+    int getTransitionTo(int position) {
+
+        return _transitionsTo[position];
+    }
+}
@@ -0,0 +1,218 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Streaming detrended fluctuation analysis of the R-R intervals.
+ *
+ * The profile is the cumulative sum of the intervals. For every scale from MIN_SCALE to MAX_SCALE
+ * beats the profile is split in consecutive boxes aligned to the first interval, and each box
+ * keeps the least squares sums of its points relative to its first one. A new interval only
+ * updates the open box of each scale. When a box is complete its squared residual around the
+ * fitted line is stored, and boxes that start before the window are expired, so the fluctuation
+ * of each scale is read from a running sum. Every sum is an exact long: the residual of a box is
+ * kept multiplied by a denominator that only depends on the scale.
+ *
+ * Subtracting the mean interval from the profile adds a straight line to every box, which the
+ * detrending removes, so it isn't needed.
+ */
+class DetrendedFluctuation {
+
+    // Scales in beats of the short term exponent alpha1
+    static final int MIN_SCALE = 4;
+    static final int MAX_SCALE = 16;
+    private static final int SCALES = MAX_SCALE - MIN_SCALE + 1;
+
+    /** Min number of boxes of the longest scale to calculate alpha1. */
+    private static final int MIN_BOXES = 2;
+
+    /** Sum of the intervals added. */
+    private long _profile = 0;
+
+    /** Number of intervals added. */
+    private int _count = 0;
+
+    // Open box of each scale: number of points, profile before its first interval and
+    // the sums of y, k * y and y * y for the points k = 0, 1, ... relative to that profile
+    private final int[] _fill = new int[SCALES];
+    private final long[] _start = new long[SCALES];
+    private final long[] _sumY = new long[SCALES];
+    private final long[] _sumKY = new long[SCALES];
+    private final long[] _sumYY = new long[SCALES];
+
+    // Per scale constants: sum of k, sum of k * k and the least squares denominator
+    private final long[] _sumK = new long[SCALES];
+    private final long[] _sumKK = new long[SCALES];
+    private final long[] _denominator = new long[SCALES];
+    private final double[] _logScale = new double[SCALES];
+
+    // Complete boxes in the window of each scale. Circular arrays of start positions and residuals
+    // multiplied by the scale denominator, with the oldest box at _first and their running sum
+    private final int[][] _boxStarts;
+    private final long[][] _boxResiduals;
+    private final int[] _first = new int[SCALES];
+    private final int[] _boxCount = new int[SCALES];
+    private final long[] _residualSum = new long[SCALES];
+
+    // Calculated alpha1. Invalidated by every new interval
+    private double _alpha1 = 0;
+    private boolean _alpha1Valid = true;
+
+    /**
+     * Package constructor
+     * @param windowLength Milli seconds of R-R intervals analyzed
+     */
+    DetrendedFluctuation(long windowLength) {
+
+        // The most intervals a window can hold are the shortest valid ones. The artifact corrector
+        // doesn't produce shorter ones
+        int maxIntervals = (int) (windowLength * RrInterval.MAX_HR / 60000) + 2;
+        _boxStarts = new int[SCALES][];
+        _boxResiduals = new long[SCALES][];
+        for (int s = 0; s < SCALES; s++) {
+
+            long n = MIN_SCALE + s;
+            _sumK[s] = n * (n - 1) / 2;
+            _sumKK[s] = (n - 1) * n * (2 * n - 1) / 6;
+            _denominator[s] = n * _sumKK[s] - _sumK[s] * _sumK[s];
+            _logScale[s] = Math.log(n);
+            _boxStarts[s] = new int[(int) (maxIntervals / n) + 2];
+            _boxResiduals[s] = new long[_boxStarts[s].length];
+        }
+    }
+
+    /** Removes all the intervals. */
+    void clear() {
+
+        _profile = 0;
+        _count = 0;
+        for (int s = 0; s < SCALES; s++) {
+
+            _fill[s] = 0;
+            _start[s] = 0;
+            _sumY[s] = 0;
+            _sumKY[s] = 0;
+            _sumYY[s] = 0;
+            _first[s] = 0;
+            _boxCount[s] = 0;
+            _residualSum[s] = 0;
+        }
+        _alpha1 = 0;
+        _alpha1Valid = true;
+    }
+
+    /**
+     * Adds an interval to the open box of every scale.
+     * @param rrInterval R-R interval in milli seconds
+     * @param windowBegin Position of the oldest interval in the window. Boxes starting before are expired
+     */
+    void add(int rrInterval, int windowBegin) {
+
+        _profile += rrInterval;
+        _count++;
+        for (int s = 0; s < SCALES; s++) {
+
+            long k = _fill[s];
+            long y = _profile - _start[s];
+            _sumY[s] += y;
+            _sumKY[s] += k * y;
+            _sumYY[s] += y * y;
+            if (++_fill[s] == MIN_SCALE + s)
+                closeBox(s);
+
+            expireBoxes(s, windowBegin);
+        }
+        _alpha1Valid = false;
+    }
+
+    /** Stores the residual of the complete open box of a scale and opens the next one. */
+    private void closeBox(int s) {
+
+        long n = MIN_SCALE + s;
+        long sumY = _sumY[s];
+        long sumKY = _sumKY[s];
+
+        // Residual sum of squares around the least squares line, multiplied by the denominator
+        long residual = _sumYY[s] * _denominator[s]
+                - (sumY * sumY * _sumKK[s] - 2 * _sumK[s] * sumY * sumKY + n * sumKY * sumKY);
+
+        int[] starts = _boxStarts[s];
+        if (_boxCount[s] == starts.length)
+            throw new IllegalStateException("More boxes of " + n + " intervals than the window can hold");
+        int last = (_first[s] + _boxCount[s]) % starts.length;
+        starts[last] = _count - (int) n;
+        _boxResiduals[s][last] = residual;
+        _boxCount[s]++;
+        _residualSum[s] += residual;
+
+        _fill[s] = 0;
+        _start[s] = _profile;
+        _sumY[s] = 0;
+        _sumKY[s] = 0;
+        _sumYY[s] = 0;
+    }
+
+    /** Expires the complete boxes of a scale that start before the window. */
+    private void expireBoxes(int s, int windowBegin) {
+
+        int[] starts = _boxStarts[s];
+        while (_boxCount[s] > 0 && starts[_first[s]] < windowBegin) {
+
+            _residualSum[s] -= _boxResiduals[s][_first[s]];
+            _first[s] = (_first[s] + 1) % starts.length;
+            _boxCount[s]--;
+        }
+    }
+
+    /**
+     * Returns the short term scaling exponent: the slope of the log of the fluctuation against
+     * the log of the scale. Zero until the window holds MIN_BOXES boxes of the longest scale.
+     */
+    double getAlpha1() {
+
+        if (_alpha1Valid)
+            return _alpha1;
+
+        _alpha1Valid = true;
+        _alpha1 = 0;
+        if (_boxCount[SCALES - 1] < MIN_BOXES)
+            return _alpha1;
+
+        double sumX = 0;
+        double sumF = 0;
+        double sumXX = 0;
+        double sumXF = 0;
+        for (int s = 0; s < SCALES; s++) {
+
+            if (_residualSum[s] <= 0)
+                return _alpha1;
+
+            // F(n)^2 = sum of residuals / (boxes * n)
+            double x = _logScale[s];
+            double f = 0.5 * Math.log((double) _residualSum[s]
+                    / ((double) _denominator[s] * _boxCount[s] * (MIN_SCALE + s)));
+            sumX += x;
+            sumF += f;
+            sumXX += x * x;
+            sumXF += x * f;
+        }
+        _alpha1 = (SCALES * sumXF - sumX * sumF) / (SCALES * sumXX - sumX * sumX);
+        return _alpha1;
+    }
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Counts the events of the last milli seconds, like the R-R intervals dropped by a RrIntervalList.
+ * The timestamps are kept in a circular array of fixed capacity and expired lazily when counted,
+ * so each event is added and expired once. If more events happen in the window than fit, the
+ * oldest ones are forgotten and the count saturates at the capacity.
+ */
+class EventWindow {
+
+    /** Window length in milli seconds. */
+    private final long _length;
+
+    /** Circular array of timestamps. The oldest one is at _first. */
+    private final long[] _timestamps;
+    private int _first = 0;
+    private int _count = 0;
+
+    /**
+     * Package constructor
+     * @param length Window length in milli seconds
+     * @param capacity Max number of events counted
+     */
+    EventWindow(long length, int capacity) {
+
+        _length = length;
+        _timestamps = new long[capacity];
+    }
+
+    /** Removes all the events. */
+    void clear() {
+
+        _first = 0;
+        _count = 0;
+    }
+
+    /** Adds an event. Timestamps should be non decreasing. */
+    void add(long timestamp) {
+
+        if (_count == _timestamps.length) {
+
+            _first = (_first + 1) % _timestamps.length;
+            _count--;
+        }
+        _timestamps[(_first + _count) % _timestamps.length] = timestamp;
+        _count++;
+    }
+
+    /** Returns the number of events in the window that ends at the specified time. */
+    int count(long now) {
+
+        while (_count > 0 && _timestamps[_first] < now - _length) {
+
+            _first = (_first + 1) % _timestamps.length;
+            _count--;
+        }
+        return _count;
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * In place radix-2 complex fast Fourier transform of a fixed size.
+ * Twiddle factors and the bit reversal permutation are calculated once in the constructor
+ * so transforms don't allocate memory.
+ */
+class Fft {
+
+    private final int _size;
+    private final double[] _cos;
+    private final double[] _sin;
+    private final int[] _reverse;
+
+    /**
+     * Package constructor
+     * @param size Number of complex points. Must be a power of two bigger than one
+     */
+    Fft(int size) {
+
+        if (size < 2 || (size & (size - 1)) != 0)
+            throw new IllegalArgumentException("Fft size must be a power of two: " + size);
+
+        _size = size;
+        _cos = new double[size / 2];
+        _sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+
+            double angle = -2 * Math.PI * i / size;
+            _cos[i] = Math.cos(angle);
+            _sin[i] = Math.sin(angle);
+        }
+
+        int shift = 32 - Integer.numberOfTrailingZeros(size);
+        _reverse = new int[size];
+        for (int i = 0; i < size; i++)
+            _reverse[i] = Integer.reverse(i) >>> shift;
+    }
+
+    /** Returns a periodic Hann window table of the specified length. */
+    static double[] hann(int length) {
+
+        double[] window = new double[length];
+        for (int i = 0; i < length; i++)
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / length);
+        return window;
+    }
+
+    /** Returns the number of complex points. */
+    int getSize() {
+
+        return _size;
+    }
+
+    /**
+     * Replaces the values by their forward transform X[k] = sum x[j] exp(-2 pi i j k / size).
+     * @param re Real parts. At least size values
+     * @param im Imaginary parts. At least size values
+     */
+    void transform(double[] re, double[] im) {
+
+        for (int i = 0; i < _size; i++) {
+
+            int j = _reverse[i];
+            if (i < j) {
+
+                double tmp = re[i];
+                re[i] = re[j];
+                re[j] = tmp;
+                tmp = im[i];
+                im[i] = im[j];
+                im[j] = tmp;
+            }
+        }
+
+        for (int length = 2; length <= _size; length <<= 1) {
+
+            int half = length >> 1;
+            int step = _size / length;
+            for (int i = 0; i < _size; i += length) {
+
+                for (int k = 0; k < half; k++) {
+
+                    double wr = _cos[k * step];
+                    double wi = _sin[k * step];
+                    int a = i + k;
+                    int b = a + half;
+                    double tr = wr * re[b] - wi * im[b];
+                    double ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
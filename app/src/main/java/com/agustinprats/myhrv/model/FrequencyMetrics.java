@@ -0,0 +1,91 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Frequency domain hrv metrics. Powers are in squared milli seconds.
+ * Bands as defined by the Task Force of the European Society of Cardiology (1996).
+ */
+public class FrequencyMetrics {
+
+    // Band limits in Hz
+    public static final double VLF_MIN = 0.0033;
+    public static final double LF_MIN = 0.04;
+    public static final double HF_MIN = 0.15;
+    public static final double HF_MAX = 0.4;
+
+    /** Metrics of an empty spectrum. */
+    public static final FrequencyMetrics EMPTY = new FrequencyMetrics(0, 0, 0, 0);
+
+    private final double _vlf;
+    private final double _lf;
+    private final double _hf;
+    private final double _peakFrequency;
+
+    /**
+     * Package constructor
+     * @param vlf Very low frequency power
+     * @param lf Low frequency power
+     * @param hf High frequency power
+     * @param peakFrequency Frequency with the highest power in the LF and HF bands
+     */
+    FrequencyMetrics(double vlf, double lf, double hf, double peakFrequency) {
+
+        _vlf = vlf;
+        _lf = lf;
+        _hf = hf;
+        _peakFrequency = peakFrequency;
+    }
+
+    /** Returns the very low frequency power. */
+    public double getVLF() {
+
+        return _vlf;
+    }
+
+    /** Returns the low frequency power. */
+    public double getLF() {
+
+        return _lf;
+    }
+
+    /** Returns the high frequency power. */
+    public double getHF() {
+
+        return _hf;
+    }
+
+    /** Returns the power of the three bands. */
+    public double getTotalPower() {
+
+        return _vlf + _lf + _hf;
+    }
+
+    /** Returns the LF/HF ratio or zero if there is no high frequency power. */
+    public double getLFHFRatio() {
+
+        return _hf > 0 ? _lf / _hf : 0;
+    }
+
+    /** Returns the frequency in Hz with the highest power in the LF and HF bands. Zero if empty. */
+    public double getPeakFrequency() {
+
+        return _peakFrequency;
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Geometric hrv metrics calculated from the histogram of a window of R-R intervals
+ * with bins of 1/128 seconds.
+ */
+public class GeometricMetrics {
+
+    /** Metrics of an empty window. */
+    public static final GeometricMetrics EMPTY = new GeometricMetrics(0, 0, 0, 0, 0);
+
+    private final double _mode;
+    private final double _modeAmplitude;
+    private final double _stressIndex;
+    private final double _triangularIndex;
+    private final double _tinn;
+
+    /**
+     * Package constructor
+     * @param mode Center of the most frequent bin in milli seconds
+     * @param modeAmplitude Percentage of intervals in the most frequent bin
+     * @param stressIndex Baevsky stress index
+     * @param triangularIndex Number of intervals divided by the count of the most frequent bin
+     * @param tinn Base width of the triangle that fits the histogram in milli seconds
+     */
+    GeometricMetrics(double mode, double modeAmplitude, double stressIndex, double triangularIndex, double tinn) {
+
+        _mode = mode;
+        _modeAmplitude = modeAmplitude;
+        _stressIndex = stressIndex;
+        _triangularIndex = triangularIndex;
+        _tinn = tinn;
+    }
+
+    /** Returns the mode: the center of the most frequent bin in milli seconds. */
+    public double getMode() {
+
+        return _mode;
+    }
+
+    /** Returns the amplitude of the mode: the percentage of intervals in the most frequent bin. */
+    public double getModeAmplitude() {
+
+        return _modeAmplitude;
+    }
+
+    /** Returns the Baevsky stress index: AMo / (2 * Mo * MxDMn) with times in seconds. Zero if all intervals are equal. */
+    public double getStressIndex() {
+
+        return _stressIndex;
+    }
+
+    /** Returns the hrv triangular index. */
+    public double getTriangularIndex() {
+
+        return _triangularIndex;
+    }
+
+    /** Returns the triangular interpolation of the NN interval histogram in milli seconds. */
+    public double getTINN() {
+
+        return _tinn;
+    }
+}
@@ -0,0 +1,255 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Lomb-Scargle periodogram of unevenly sampled values calculated in O(n log n) with the
+ * Press-Rybicki method: samples are extirpolated to a regular grid and the trigonometric sums
+ * are taken from Fourier transforms of the grid. Both grids are real so they are transformed
+ * together as the real and imaginary parts of a single complex transform.
+ *
+ * Work buffers are kept between calculations and only grow, so once warmed up calculating
+ * a new periodogram doesn't allocate memory.
+ *
+ * Press, W. H. and Rybicki, G. B. "Fast algorithm for spectral analysis of unevenly sampled data"
+ * http://adsabs.harvard.edu/abs/1989ApJ...338..277P
+ */
+class LombScarglePeriodogram {
+
+    /** Oversampling of the frequency grid over the inverse of the time span. */
+    static final int OVERSAMPLING = 4;
+
+    /** Number of grid points every sample is extirpolated to. */
+    private static final int EXTIRPOLATION_POINTS = 4;
+
+    /** (EXTIRPOLATION_POINTS - 1)! */
+    private static final double EXTIRPOLATION_FACTORIAL = 6;
+
+    /** Distance to a grid point under which a sample is added to the point alone. */
+    private static final double GRID_POINT_TOLERANCE = 1e-9;
+
+    /** Min number of complex points of the transform. */
+    private static final int MIN_FFT_SIZE = 128;
+
+    /** Highest frequency calculated in Hz. */
+    private final double _maxFrequency;
+
+    // Work buffers
+    private Fft _fft = null;
+    private double[] _re = new double[0];
+    private double[] _im = new double[0];
+
+    // Result: power of the frequencies (i + 1) * _step for i in [0, _size)
+    private double[] _powers = new double[0];
+    private int _size = 0;
+    private double _step = 0;
+
+    /**
+     * Package constructor
+     * @param maxFrequency Highest frequency calculated in Hz
+     */
+    LombScarglePeriodogram(double maxFrequency) {
+
+        _maxFrequency = maxFrequency;
+    }
+
+    /** Empties the periodogram. */
+    void clear() {
+
+        _size = 0;
+        _step = 0;
+    }
+
+    /**
+     * Calculates the periodogram.
+     * @param times Sample times in seconds in ascending order
+     * @param values Sample values
+     * @param count Number of samples
+     * @return True if calculated. False if the samples don't span any time or don't vary
+     */
+    boolean compute(double[] times, double[] values, int count) {
+
+        clear();
+        if (count < 2)
+            return false;
+
+        double span = times[count - 1] - times[0];
+        double mean = 0;
+        for (int i = 0; i < count; i++)
+            mean += values[i];
+        mean /= count;
+        double variance = 0;
+        for (int i = 0; i < count; i++)
+            variance += (values[i] - mean) * (values[i] - mean);
+        variance /= count - 1;
+        if (span <= 0 || variance <= 0)
+            return false;
+
+        // Frequency grid
+        double step = 1 / (span * OVERSAMPLING);
+        int size = (int) Math.ceil(_maxFrequency / step);
+        int fftSize = MIN_FFT_SIZE;
+        while (fftSize < 4 * size * EXTIRPOLATION_POINTS)
+            fftSize <<= 1;
+        ensureCapacity(fftSize, size);
+        fftSize = _fft.getSize();
+
+        // Extirpolates the values to the real grid and the unit weights at double frequency to the imaginary one
+        for (int i = 0; i < fftSize; i++) {
+
+            _re[i] = 0;
+            _im[i] = 0;
+        }
+        double scale = fftSize / (span * OVERSAMPLING);
+        for (int i = 0; i < count; i++) {
+
+            double position = ((times[i] - times[0]) * scale) % fftSize;
+            spread(values[i] - mean, _re, fftSize, position);
+            spread(1, _im, fftSize, (2 * position) % fftSize);
+        }
+
+        _fft.transform(_re, _im);
+
+        // Separates both transforms and calculates the power of each frequency
+        for (int k = 1; k <= size; k++) {
+
+            int n = fftSize - k;
+            double valuesRe = (_re[k] + _re[n]) / 2;
+            double valuesIm = (_im[k] - _im[n]) / 2;
+            double weightsRe = (_im[k] + _im[n]) / 2;
+            double weightsIm = (_re[n] - _re[k]) / 2;
+
+            double power = 0;
+            double hypot = Math.sqrt(weightsRe * weightsRe + weightsIm * weightsIm);
+            if (hypot > 0) {
+
+                double cos2wt = 0.5 * weightsRe / hypot;
+                double sin2wt = 0.5 * weightsIm / hypot;
+                double coswt = Math.sqrt(0.5 + cos2wt);
+                double sinwt = Math.copySign(Math.sqrt(Math.max(0, 0.5 - cos2wt)), sin2wt);
+                double den = 0.5 * count + cos2wt * weightsRe + sin2wt * weightsIm;
+
+                double cosTerm = coswt * valuesRe + sinwt * valuesIm;
+                double sinTerm = coswt * valuesIm - sinwt * valuesRe;
+                if (den > 0)
+                    power += cosTerm * cosTerm / den;
+                if (count - den > 0)
+                    power += sinTerm * sinTerm / (count - den);
+            }
+
+            // Scaled so the power of all the frequencies up to the Nyquist frequency adds up to the variance
+            _powers[k - 1] = power / (count * OVERSAMPLING);
+        }
+        _size = size;
+        _step = step;
+        return true;
+    }
+
+    /** Grows the work buffers if needed. The transform size never shrinks. */
+    private void ensureCapacity(int fftSize, int size) {
+
+        if (_fft == null || _fft.getSize() < fftSize) {
+
+            _fft = new Fft(fftSize);
+            _re = new double[fftSize];
+            _im = new double[fftSize];
+        }
+        if (_powers.length < size)
+            _powers = new double[size];
+    }
+
+    /**
+     * Adds a value to the grid at a fractional position spreading it over the nearest
+     * EXTIRPOLATION_POINTS points with Lagrange interpolation weights.
+     */
+    private static void spread(double value, double[] grid, int size, double position) {
+
+        // One based positions as in the original algorithm. A position on a grid point would
+        // make one of the weights 0 / 0, and rounding can put it there after adding one
+        double x = position + 1;
+        double nearest = Math.rint(x);
+        if (Math.abs(x - nearest) < GRID_POINT_TOLERANCE) {
+
+            grid[((int) nearest - 1) % size] += value;
+            return;
+        }
+
+        int lo = Math.min(Math.max((int) (x - 0.5 * EXTIRPOLATION_POINTS + 1), 1), size - EXTIRPOLATION_POINTS + 1);
+        int hi = lo + EXTIRPOLATION_POINTS - 1;
+        double factor = x - lo;
+        for (int j = lo + 1; j <= hi; j++)
+            factor *= x - j;
+
+        double den = EXTIRPOLATION_FACTORIAL;
+        grid[hi - 1] += value * factor / (den * (x - hi));
+        for (int j = hi - 1; j >= lo; j--) {
+
+            den = (den / (j + 1 - lo)) * (j - hi);
+            grid[j - 1] += value * factor / (den * (x - j));
+        }
+    }
+
+    /** Returns the number of frequencies calculated. Zero if empty. */
+    int getSize() {
+
+        return _size;
+    }
+
+    /** Returns the frequency in Hz at the specified position. */
+    double getFrequency(int position) {
+
+        return (position + 1) * _step;
+    }
+
+    /** Returns the power at the specified position. */
+    double getPower(int position) {
+
+        return _powers[position];
+    }
+
+    /** Returns the power of the frequencies in [from, to) Hz. */
+    double getPower(double from, double to) {
+
+        double result = 0;
+        for (int i = 0; i < _size; i++) {
+
+            double frequency = getFrequency(i);
+            if (frequency >= from && frequency < to)
+                result += _powers[i];
+        }
+        return result;
+    }
+
+    /** Returns the frequency with the highest power in [from, to) Hz. Zero if there is none. */
+    double getPeakFrequency(double from, double to) {
+
+        double result = 0;
+        double peak = 0;
+        for (int i = 0; i < _size; i++) {
+
+            double frequency = getFrequency(i);
+            if (frequency >= from && frequency < to && _powers[i] > peak) {
+
+                peak = _powers[i];
+                result = frequency;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Immutable description of a metric of the MetricRegistry: the R-R intervals it covers and how
+ * often it's recalculated. RrIntervalList takes both from here.
+ */
+public class MetricDescriptor {
+
+    private final long _window;
+    private final long _cadence;
+
+    /**
+     * Package constructor
+     * @param window Milli seconds of the last R-R intervals the metric is calculated from.
+     *               Zero if it's calculated from the window statistics of the list
+     * @param cadence Milli seconds of R-R intervals between calculations. Zero to calculate it on every update
+     */
+    MetricDescriptor(long window, long cadence) {
+
+        _window = window;
+        _cadence = cadence;
+    }
+
+    /** Returns the milli seconds of the last R-R intervals the metric is calculated from. Zero if it's calculated from the window statistics of the list. */
+    public long getWindow() {
+
+        return _window;
+    }
+
+    /** Returns the milli seconds of R-R intervals between calculations. Zero if it's calculated on every update. */
+    public long getCadence() {
+
+        return _cadence;
+    }
+}
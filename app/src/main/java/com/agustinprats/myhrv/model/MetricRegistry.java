@@ -0,0 +1,103 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Subscriptions to the optional metrics of a RrIntervalList. Only the metrics with at least
+ * one subscriber are updated, so nothing is calculated for views that aren't displayed.
+ * Heart rate, hrv, coherence and the coherence zone are always calculated because the
+ * coherence zone notifications depend on them.
+ *
+ * Subscriptions are counted, so every subscribe() should be paired with an unsubscribe().
+ * They can be changed from any thread and are applied by the list before its next update.
+ */
+public class MetricRegistry {
+
+    // Optional metrics
+    /** Frequency domain metrics. */
+    public static final int METRIC_SPECTRUM = 0;
+    /** Spectrogram of the heart rhythm. */
+    public static final int METRIC_SPECTROGRAM = 1;
+    /** Detrended fluctuation analysis alpha1. */
+    public static final int METRIC_DFA = 2;
+    /** Sample entropy. */
+    public static final int METRIC_SAMPLE_ENTROPY = 3;
+    /** Time domain metrics. */
+    public static final int METRIC_TIME_DOMAIN = 4;
+    /** Geometric metrics of the R-R interval histogram. */
+    public static final int METRIC_GEOMETRIC = 5;
+    /** Poincaré plot and its SD1 and SD2. */
+    public static final int METRIC_POINCARE = 6;
+
+    /** Number of optional metrics. */
+    public static final int METRIC_COUNT = 7;
+
+    /** Descriptors of the metrics in METRIC_ order. */
+    private static final MetricDescriptor[] _descriptors = {
+            new MetricDescriptor(120000, 5000),                         // METRIC_SPECTRUM
+            new MetricDescriptor(Spectrogram.SPAN, Spectrogram.HOP),    // METRIC_SPECTROGRAM
+            new MetricDescriptor(120000, 5000),                         // METRIC_DFA
+            new MetricDescriptor(300000, 0),                            // METRIC_SAMPLE_ENTROPY
+            new MetricDescriptor(0, 0),                                 // METRIC_TIME_DOMAIN
+            new MetricDescriptor(0, 1000),                              // METRIC_GEOMETRIC
+            new MetricDescriptor(0, 0)                                  // METRIC_POINCARE
+    };
+
+    /** Number of subscribers of each metric. */
+    private final AtomicIntegerArray _subscribers = new AtomicIntegerArray(METRIC_COUNT);
+
+    /** Returns the descriptor of a metric. */
+    public static MetricDescriptor getDescriptor(int metric) {
+
+        return _descriptors[metric];
+    }
+
+    /** Adds a subscriber to a metric. */
+    public void subscribe(int metric) {
+
+        _subscribers.incrementAndGet(metric);
+    }
+
+    /** Removes a subscriber from a metric. Nothing is done if it has none. */
+    public void unsubscribe(int metric) {
+
+        int count;
+        do {
+
+            count = _subscribers.get(metric);
+            if (count == 0)
+                return;
+        }
+        while (!_subscribers.compareAndSet(metric, count, count - 1));
+    }
+
+    /** Returns true if a metric has at least one subscriber. */
+    public boolean isSubscribed(int metric) {
+
+        return _subscribers.get(metric) > 0;
+    }
+
+    /** Returns the number of subscribers of a metric. */
+    public int getSubscriberCount(int metric) {
+
+        return _subscribers.get(metric);
+    }
+}
@@ -0,0 +1,529 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Immutable copy of the metrics of a RrIntervalList at a given moment.
+ * It's created by the thread that adds the intervals and it can be read from any thread
+ * without locking. The arrays returned by the getters are shared and must not be modified.
+ */
+public class MetricsSnapshot {
+
+    /** Max number of points of the Poincaré plot. */
+    public static final int POINCARE_POINTS = 256;
+
+    /** Poincaré points of a snapshot without them. */
+    private static final int[] EMPTY_RR_INTERVALS = new int[0];
+
+    private final int _size;
+    private final int[] _newRrIntervals;
+    private final double _instantHeartRate;
+    private final double _instantHRV;
+    private final double _instantCoherence;
+    private final double _heartRate;
+    private final double _hrv;
+    private final double _coherence;
+    private final long[] _horizonLengths;
+    private final double[] _horizonHeartRates;
+    private final double[] _horizonHRVs;
+    private final double[] _horizonCoherences;
+    private final double _instantSD1;
+    private final double _instantSD2;
+    private final double _sd1;
+    private final double _sd2;
+    private final double _alpha1;
+    private final TimeDomainMetrics _instantTimeDomainMetrics;
+    private final TimeDomainMetrics _timeDomainMetrics;
+    private final GeometricMetrics _instantGeometricMetrics;
+    private final GeometricMetrics _geometricMetrics;
+    private final double _sampleEntropy;
+    private final int[] _poincareRrIntervals;
+    private final CoherenceZone _coherenceZone;
+    private final long[] _zoneTimes;
+    private final long[] _zoneLongestStreaks;
+    private final long _zoneStreak;
+    private final int _zoneTransitionCount;
+    private final double _instantMinHeartRate;
+    private final double _instantMaxHeartRate;
+    private final int _measuredTime;
+    private final float _droppedRate;
+    private final float _artifactRate;
+    private final SignalQuality _signalQuality;
+    private final FrequencyMetrics _frequencyMetrics;
+    private final SpectrogramFrame _spectrogram;
+    private final long _chartSpan;
+    private final double _chartMinHeartRate;
+    private final double _chartMaxHeartRate;
+    private final long[] _chartTimestamps;
+    private final double[] _chartHeartRates;
+
+    /**
+     * Package constructor. Use RrIntervalList.newSnapshot().
+     * @param list List whose metrics are copied
+     * @param added Number of newest intervals to include as new
+     * @param previous Previous snapshot of the list or null. Its values are kept for the metrics not due yet
+     */
+    MetricsSnapshot(RrIntervalList list, int added, MetricsSnapshot previous) {
+
+        _size = list.size();
+        _newRrIntervals = new int[Math.max(0, Math.min(added, _size))];
+        for (int i = 0; i < _newRrIntervals.length; i++)
+            _newRrIntervals[i] = list.getRRInterval(_size - _newRrIntervals.length + i);
+
+        _instantHeartRate = list.getInstantHeartRate();
+        _instantHRV = list.getInstantHRV();
+        _instantCoherence = list.getInstantCoherence();
+        _heartRate = list.getHeartRate();
+        _hrv = list.getHRV();
+        _coherence = list.getCoherence();
+
+        int horizons = list.getHorizonCount();
+        _horizonLengths = new long[horizons];
+        _horizonHeartRates = new double[horizons];
+        _horizonHRVs = new double[horizons];
+        _horizonCoherences = new double[horizons];
+        for (int i = 0; i < horizons; i++) {
+
+            RrWindow horizon = list.getHorizon(i);
+            _horizonLengths[i] = horizon.getLength();
+            _horizonHeartRates[i] = horizon.getHeartRate();
+            _horizonHRVs[i] = horizon.getHRV();
+            _horizonCoherences[i] = horizon.getCoherence();
+        }
+
+
+        // Optional metrics: calculated when due, kept from the previous snapshot or empty without subscribers
+        if (isDue(list, MetricRegistry.METRIC_POINCARE, previous)) {
+
+            _instantSD1 = list.getInstantSD1();
+            _instantSD2 = list.getInstantSD2();
+            _sd1 = list.getSD1();
+            _sd2 = list.getSD2();
+            _poincareRrIntervals = new int[Math.min(_size, POINCARE_POINTS + 1)];
+            for (int i = 0; i < _poincareRrIntervals.length; i++)
+                _poincareRrIntervals[i] = list.getRRInterval(_size - _poincareRrIntervals.length + i);
+        }
+        else {
+
+            boolean keep = list.isMetricActive(MetricRegistry.METRIC_POINCARE);
+            _instantSD1 = keep ? previous._instantSD1 : 0;
+            _instantSD2 = keep ? previous._instantSD2 : 0;
+            _sd1 = keep ? previous._sd1 : 0;
+            _sd2 = keep ? previous._sd2 : 0;
+            _poincareRrIntervals = keep ? previous._poincareRrIntervals : EMPTY_RR_INTERVALS;
+        }
+
+        if (isDue(list, MetricRegistry.METRIC_DFA, previous))
+            _alpha1 = list.getAlpha1();
+        else
+            _alpha1 = list.isMetricActive(MetricRegistry.METRIC_DFA) ? previous._alpha1 : 0;
+
+        if (isDue(list, MetricRegistry.METRIC_TIME_DOMAIN, previous)) {
+
+            _instantTimeDomainMetrics = list.getInstantTimeDomainMetrics();
+            _timeDomainMetrics = list.getTimeDomainMetrics();
+        }
+        else {
+
+            boolean keep = list.isMetricActive(MetricRegistry.METRIC_TIME_DOMAIN);
+            _instantTimeDomainMetrics = keep ? previous._instantTimeDomainMetrics : TimeDomainMetrics.EMPTY;
+            _timeDomainMetrics = keep ? previous._timeDomainMetrics : TimeDomainMetrics.EMPTY;
+        }
+
+        if (isDue(list, MetricRegistry.METRIC_GEOMETRIC, previous)) {
+
+            _instantGeometricMetrics = list.getInstantGeometricMetrics();
+            _geometricMetrics = list.getGeometricMetrics();
+        }
+        else {
+
+            boolean keep = list.isMetricActive(MetricRegistry.METRIC_GEOMETRIC);
+            _instantGeometricMetrics = keep ? previous._instantGeometricMetrics : GeometricMetrics.EMPTY;
+            _geometricMetrics = keep ? previous._geometricMetrics : GeometricMetrics.EMPTY;
+        }
+
+        if (isDue(list, MetricRegistry.METRIC_SAMPLE_ENTROPY, previous))
+            _sampleEntropy = list.getSampleEntropy();
+        else
+            _sampleEntropy = list.isMetricActive(MetricRegistry.METRIC_SAMPLE_ENTROPY) ? previous._sampleEntropy : -1;
+
+        _frequencyMetrics = list.isMetricActive(MetricRegistry.METRIC_SPECTRUM) ?
+                list.getFrequencyMetrics() : FrequencyMetrics.EMPTY;
+        _spectrogram = list.isMetricActive(MetricRegistry.METRIC_SPECTROGRAM) ? list.getSpectrogram() : null;
+
+        _coherenceZone = list.getCoherenceZone();
+        int zones = CoherenceZone.getList().size();
+        _zoneTimes = new long[zones];
+        _zoneLongestStreaks = new long[zones];
+        for (int i = 0; i < zones; i++) {
+
+            _zoneTimes[i] = list.getZoneTime(i);
+            _zoneLongestStreaks[i] = list.getZoneLongestStreak(i);
+        }
+        _zoneStreak = list.getZoneStreak();
+        _zoneTransitionCount = list.getZoneTransitionCount();
+        _instantMinHeartRate = list.getInstantMinHeartRate();
+        _instantMaxHeartRate = list.getInstantMaxHeartRate();
+        _measuredTime = list.getMeasuredTime();
+        _droppedRate = list.getDroppedRate();
+        _artifactRate = list.getArtifactRate();
+        _signalQuality = list.getSignalQuality();
+
+        // Chart points. The one before the chart window is kept so the line reaches the left border
+        RrWindow chartWindow = list.getChartWindow();
+        _chartSpan = chartWindow.getLength();
+        _chartMinHeartRate = chartWindow.getMinHeartRate();
+        _chartMaxHeartRate = chartWindow.getMaxHeartRate();
+        int from = Math.max(0, chartWindow.getBegin() - 1);
+        _chartTimestamps = new long[_size - from];
+        _chartHeartRates = new double[_size - from];
+        for (int i = from; i < _size; i++) {
+
+            _chartTimestamps[i - from] = list.getTimestamp(i);
+            _chartHeartRates[i - from] = RrInterval.getHeartRate(list.getRRInterval(i));
+        }
+    }
+
+    /**
+     * Returns true if an optional metric has to be calculated for this snapshot: it's due or
+     * there isn't a previous value to keep. The metric is recorded as updated.
+     */
+    private static boolean isDue(RrIntervalList list, int metric, MetricsSnapshot previous) {
+
+        if (!list.isMetricActive(metric))
+            return false;
+        if (previous != null && !list.isMetricDue(metric))
+            return false;
+
+        list.onMetricUpdated(metric);
+        return true;
+    }
+
+    /** Returns the number of valid R-R intervals stored in the list. */
+    public int size() {
+
+        return _size;
+    }
+
+    /** Returns the R-R intervals added since the previous snapshot, oldest first. */
+    public int[] getNewRrIntervals() {
+
+        return _newRrIntervals;
+    }
+
+    /** Returns the average heart rate in the instant window. */
+    public double getInstantHeartRate() {
+
+        return _instantHeartRate;
+    }
+
+    /** Returns the hrv in the instant window. */
+    public double getInstantHRV() {
+
+        return _instantHRV;
+    }
+
+    /** Returns the coherence score in the instant window. */
+    public double getInstantCoherence() {
+
+        return _instantCoherence;
+    }
+
+    /** Returns the total average heart rate. */
+    public double getHeartRate() {
+
+        return _heartRate;
+    }
+
+    /** Returns the total hrv. */
+    public double getHRV() {
+
+        return _hrv;
+    }
+
+    /** Returns the total coherence score. */
+    public double getCoherence() {
+
+        return _coherence;
+    }
+
+    /** Returns the number of horizons. They are sorted by length. */
+    public int getHorizonCount() {
+
+        return _horizonLengths.length;
+    }
+
+    /** Returns the position of the horizon of the specified milli seconds or -1 if it isn't kept. */
+    public int indexOfHorizon(long millis) {
+
+        for (int i = 0; i < _horizonLengths.length; i++)
+            if (_horizonLengths[i] == Math.max(0, millis))
+                return i;
+        return -1;
+    }
+
+    /** Returns the length of a horizon in milli seconds. Zero if it covers the whole session. */
+    public long getHorizonLength(int index) {
+
+        return _horizonLengths[index];
+    }
+
+    /** Returns the average heart rate in a horizon. */
+    public double getHorizonHeartRate(int index) {
+
+        return _horizonHeartRates[index];
+    }
+
+    /** Returns the hrv in a horizon. */
+    public double getHorizonHRV(int index) {
+
+        return _horizonHRVs[index];
+    }
+
+    /** Returns the coherence score in a horizon. */
+    public double getHorizonCoherence(int index) {
+
+        return _horizonCoherences[index];
+    }
+
+    /** Returns the Poincaré SD1 in the instant window. */
+    public double getInstantSD1() {
+
+        return _instantSD1;
+    }
+
+    /** Returns the Poincaré SD2 in the instant window. */
+    public double getInstantSD2() {
+
+        return _instantSD2;
+    }
+
+    /** Returns the SD1/SD2 ratio in the instant window. Zero if SD2 is zero. */
+    public double getInstantSD1SD2Ratio() {
+
+        return _instantSD2 > 0 ? _instantSD1 / _instantSD2 : 0;
+    }
+
+    /** Returns the area of the Poincaré ellipse in the instant window. */
+    public double getInstantPoincareArea() {
+
+        return Math.PI * _instantSD1 * _instantSD2;
+    }
+
+    /** Returns the total Poincaré SD1. */
+    public double getSD1() {
+
+        return _sd1;
+    }
+
+    /** Returns the total Poincaré SD2. */
+    public double getSD2() {
+
+        return _sd2;
+    }
+
+    /** Returns the total SD1/SD2 ratio. Zero if SD2 is zero. */
+    public double getSD1SD2Ratio() {
+
+        return _sd2 > 0 ? _sd1 / _sd2 : 0;
+    }
+
+    /** Returns the total area of the Poincaré ellipse. */
+    public double getPoincareArea() {
+
+        return Math.PI * _sd1 * _sd2;
+    }
+
+    /** Returns the time domain metrics in the instant window. */
+    public TimeDomainMetrics getInstantTimeDomainMetrics() {
+
+        return _instantTimeDomainMetrics;
+    }
+
+    /** Returns the total time domain metrics. */
+    public TimeDomainMetrics getTimeDomainMetrics() {
+
+        return _timeDomainMetrics;
+    }
+
+    /** Returns the geometric metrics in the instant window. */
+    public GeometricMetrics getInstantGeometricMetrics() {
+
+        return _instantGeometricMetrics;
+    }
+
+    /** Returns the total geometric metrics. */
+    public GeometricMetrics getGeometricMetrics() {
+
+        return _geometricMetrics;
+    }
+
+    /** Returns the DFA short term scaling exponent alpha1. Zero if not available yet. */
+    public double getAlpha1() {
+
+        return _alpha1;
+    }
+
+    /** Returns the sample entropy or -1 if it's undefined. */
+    public double getSampleEntropy() {
+
+        return _sampleEntropy;
+    }
+
+    /** Returns the number of points of the Poincaré plot. At most POINCARE_POINTS. */
+    public int getPoincareSize() {
+
+        return Math.max(0, _poincareRrIntervals.length - 1);
+    }
+
+    /** Returns the older R-R interval of a Poincaré point, the oldest point first. */
+    public int getPoincareX(int position) {
+
+        return _poincareRrIntervals[position];
+    }
+
+    /** Returns the newer R-R interval of a Poincaré point, the oldest point first. */
+    public int getPoincareY(int position) {
+
+        return _poincareRrIntervals[position + 1];
+    }
+
+    /** Returns the current coherence zone. */
+    public CoherenceZone getCoherenceZone() {
+
+        return _coherenceZone;
+    }
+
+    /** Returns the milli seconds of R-R intervals spent in a coherence zone. */
+    public long getZoneTime(int zoneIndex) {
+
+        return _zoneTimes[zoneIndex];
+    }
+
+    /** Returns the milli seconds of R-R intervals spent in a coherence zone or any higher one. */
+    public long getZoneTimeFrom(int zoneIndex) {
+
+        long time = 0;
+        for (int i = zoneIndex; i < _zoneTimes.length; i++)
+            time += _zoneTimes[i];
+        return time;
+    }
+
+    /** Returns the longest continuous milli seconds of R-R intervals spent in a coherence zone. */
+    public long getZoneLongestStreak(int zoneIndex) {
+
+        return _zoneLongestStreaks[zoneIndex];
+    }
+
+    /** Returns the milli seconds of R-R intervals since the current coherence zone was entered. */
+    public long getZoneStreak() {
+
+        return _zoneStreak;
+    }
+
+    /** Returns the number of coherence zone changes. */
+    public int getZoneTransitionCount() {
+
+        return _zoneTransitionCount;
+    }
+
+    /** Returns the min heart rate in the instant window or -1 if empty. */
+    public double getInstantMinHeartRate() {
+
+        return _instantMinHeartRate;
+    }
+
+    /** Returns the max heart rate in the instant window or -1 if empty. */
+    public double getInstantMaxHeartRate() {
+
+        return _instantMaxHeartRate;
+    }
+
+    /** Returns the total measured time. */
+    public int getMeasuredTime() {
+
+        return _measuredTime;
+    }
+
+    /** Returns the dropped R-R intervals rate. */
+    public float getDroppedRate() {
+
+        return _droppedRate;
+    }
+
+    /** Returns the rate of stored R-R intervals that were corrected. */
+    public float getArtifactRate() {
+
+        return _artifactRate;
+    }
+
+    /** Returns the signal quality of the last minute. Metrics should be greyed out if it isn't good. */
+    public SignalQuality getSignalQuality() {
+
+        return _signalQuality;
+    }
+
+    /** Returns the frequency domain metrics. Empty without subscribers. */
+    public FrequencyMetrics getFrequencyMetrics() {
+
+        return _frequencyMetrics;
+    }
+
+    /** Returns the spectrogram of the heart rhythm or null without subscribers. */
+    public SpectrogramFrame getSpectrogram() {
+
+        return _spectrogram;
+    }
+
+    /** Returns the number of milli seconds displayed in the heart rate chart. */
+    public long getChartSpan() {
+
+        return _chartSpan;
+    }
+
+    /** Returns the min heart rate in the time displayed in the heart rate chart. */
+    public double getChartMinHeartRate() {
+
+        return _chartMinHeartRate;
+    }
+
+    /** Returns the max heart rate in the time displayed in the heart rate chart. */
+    public double getChartMaxHeartRate() {
+
+        return _chartMaxHeartRate;
+    }
+
+    /** Returns the number of points of the heart rate chart. */
+    public int getChartSize() {
+
+        return _chartTimestamps.length;
+    }
+
+    /** Returns the timestamp of a point of the heart rate chart. */
+    public long getChartTimestamp(int position) {
+
+        return _chartTimestamps[position];
+    }
+
+    /** Returns the heart rate of a point of the heart rate chart. */
+    public double getChartHeartRate(int position) {
+
+        return _chartHeartRates[position];
+    }
+}
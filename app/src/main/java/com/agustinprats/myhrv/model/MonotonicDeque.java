@@ -0,0 +1,117 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Monotonic deque of R-R intervals that keeps the minimum or the maximum of a sliding window
+ * in amortized constant time. Values that can never become the extreme are dropped when pushed.
+ */
+class MonotonicDeque {
+
+    /** Initial capacity. Must be a power of two. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** True if keeps the maximum. False if keeps the minimum. */
+    private final boolean _max;
+
+    // Ring buffer of positions in the list and their values
+    private int[] _positions = new int[INITIAL_CAPACITY];
+    private int[] _values = new int[INITIAL_CAPACITY];
+    private int _head = 0;
+    private int _size = 0;
+
+    /**
+     * Package constructor
+     * @param max True to keep the maximum. False to keep the minimum
+     */
+    MonotonicDeque(boolean max) {
+
+        _max = max;
+    }
+
+    /** Empties the deque. */
+    void clear() {
+
+        _head = 0;
+        _size = 0;
+    }
+
+    /** Returns true if there are no values. */
+    boolean isEmpty() {
+
+        return _size == 0;
+    }
+
+    /** Adds the newest value of the window. */
+    void push(int position, int value) {
+
+        int mask = _values.length - 1;
+        while (_size > 0) {
+
+            int last = _values[(_head + _size - 1) & mask];
+            if (_max ? last > value : last < value) break;
+            _size--;
+        }
+
+        if (_size == _values.length) {
+
+            grow();
+            mask = _values.length - 1;
+        }
+
+        int tail = (_head + _size) & mask;
+        _positions[tail] = position;
+        _values[tail] = value;
+        _size++;
+    }
+
+    /** Drops the values stored before the given position. */
+    void expire(int begin) {
+
+        int mask = _values.length - 1;
+        while (_size > 0 && _positions[_head] < begin) {
+
+            _head = (_head + 1) & mask;
+            _size--;
+        }
+    }
+
+    /** Returns the minimum or maximum value. The deque must not be empty. */
+    int peek() {
+
+        return _values[_head];
+    }
+
+    /** Doubles the capacity keeping the values in order. */
+    private void grow() {
+
+        int capacity = _values.length << 1;
+        int[] positions = new int[capacity];
+        int[] values = new int[capacity];
+        int mask = _values.length - 1;
+        for (int i = 0; i < _size; i++) {
+
+            positions[i] = _positions[(_head + i) & mask];
+            values[i] = _values[(_head + i) & mask];
+        }
+        _positions = positions;
+        _values = values;
+        _head = 0;
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Multiset of small non negative ints that finds the k-th smallest value, the median and the
+ * median absolute deviation. Values are counted in a Fenwick tree indexed by value, so adding,
+ * removing and selecting take O(log MAX_VALUE) and nothing is allocated after construction.
+ * Values out of [0, MAX_VALUE] are clamped, which covers every valid R-R interval in milli seconds.
+ */
+class OrderStatistics {
+
+    /** Largest value counted. One less than a power of two. */
+    static final int MAX_VALUE = 4095;
+
+    /** Number of values of the domain. */
+    private static final int DOMAIN = MAX_VALUE + 1;
+
+    /** Fenwick tree of the value counts. Position i + 1 holds the count of value i. */
+    private final int[] _tree = new int[DOMAIN + 1];
+
+    /** Number of values stored. */
+    private int _size = 0;
+
+    /** Removes all the values. */
+    void clear() {
+
+        for (int i = 0; i < _tree.length; i++)
+            _tree[i] = 0;
+        _size = 0;
+    }
+
+    /** Adds a value. */
+    void add(int value) {
+
+        update(clamp(value), 1);
+        _size++;
+    }
+
+    /** Removes a value previously added. */
+    void remove(int value) {
+
+        update(clamp(value), -1);
+        _size--;
+    }
+
+    /** Returns the number of values stored. */
+    int size() {
+
+        return _size;
+    }
+
+    /** Returns the number of values in [from, to]. */
+    int count(int from, int to) {
+
+        from = clamp(from);
+        to = clamp(to);
+        if (from > to)
+            return 0;
+        return prefix(to + 1) - prefix(from);
+    }
+
+    /** Returns the k-th smallest value, k starting at zero. */
+    int get(int k) {
+
+        // Descends the tree looking for the largest prefix with k values or less
+        int position = 0;
+        int remaining = k;
+        for (int step = DOMAIN; step > 0; step >>= 1) {
+
+            int next = position + step;
+            if (next <= DOMAIN && _tree[next] <= remaining) {
+
+                position = next;
+                remaining -= _tree[next];
+            }
+        }
+        return position;
+    }
+
+    /** Returns the median: the middle value, or the mean of the two middle values if the size is even. Zero if empty. */
+    double getMedian() {
+
+        if (_size == 0)
+            return 0;
+        return getDoubledMedian() / 2.0;
+    }
+
+    /** Returns the median absolute deviation from the median, with the same definition of median. Zero if empty. */
+    double getMad() {
+
+        if (_size == 0)
+            return 0;
+
+        int doubledMedian = getDoubledMedian();
+        int half = _size / 2;
+        if ((_size & 1) == 1)
+            return getDoubledDeviation(doubledMedian, half) / 2.0;
+        return (getDoubledDeviation(doubledMedian, half - 1) + getDoubledDeviation(doubledMedian, half)) / 4.0;
+    }
+
+    /** Returns twice the median, which is always an integer. */
+    private int getDoubledMedian() {
+
+        int half = _size / 2;
+        if ((_size & 1) == 1)
+            return 2 * get(half);
+        return get(half - 1) + get(half);
+    }
+
+    /**
+     * Returns twice the k-th smallest absolute deviation from the median, k starting at zero.
+     * Deviations are multiples of one half, so they are searched doubled as integers.
+     */
+    private int getDoubledDeviation(int doubledMedian, int k) {
+
+        // Smallest doubled deviation d such that more than k values have |2 * value - 2 * median| <= d
+        int low = 0;
+        int high = 2 * DOMAIN;
+        while (low < high) {
+
+            int deviation = (low + high) >>> 1;
+            if (count((doubledMedian - deviation + 1) >> 1, (doubledMedian + deviation) >> 1) > k)
+                high = deviation;
+            else
+                low = deviation + 1;
+        }
+        return low;
+    }
+
+    /** Adds a delta to the count of a value. */
+    private void update(int value, int delta) {
+
+        for (int i = value + 1; i <= DOMAIN; i += i & -i)
+            _tree[i] += delta;
+    }
+
+    /** Returns the number of values smaller than the specified one. */
+    private int prefix(int value) {
+
+        int result = 0;
+        for (int i = value; i > 0; i -= i & -i)
+            result += _tree[i];
+        return result;
+    }
+
+    /** Returns the value within the domain. */
+    private static int clamp(int value) {
+
+        return value < 0 ? 0 : (value > MAX_VALUE ? MAX_VALUE : value);
+    }
+}
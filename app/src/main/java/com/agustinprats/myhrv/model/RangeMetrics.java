@@ -0,0 +1,96 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Metrics calculated over the R-R intervals measured between two timestamps.
+ */
+public class RangeMetrics {
+
+    private final long _begin;
+    private final long _end;
+    private final int _count;
+    private final double _heartRate;
+    private final double _rmssd;
+    private final double _hrv;
+    private final double _coherence;
+
+    /**
+     * Package constructor
+     * @param begin Timestamp of the begin of the range
+     * @param end Timestamp of the end of the range
+     * @param count Number of R-R intervals in the range
+     * @param heartRate Average heart rate
+     * @param rmssd RMSSD of the successive differences in the range
+     * @param hrv Hrv score
+     * @param coherence Coherence score
+     */
+    RangeMetrics(long begin, long end, int count, double heartRate, double rmssd, double hrv, double coherence) {
+
+        _begin = begin;
+        _end = end;
+        _count = count;
+        _heartRate = heartRate;
+        _rmssd = rmssd;
+        _hrv = hrv;
+        _coherence = coherence;
+    }
+
+    /** Returns the timestamp of the begin of the range. */
+    public long getBegin() {
+
+        return _begin;
+    }
+
+    /** Returns the timestamp of the end of the range. */
+    public long getEnd() {
+
+        return _end;
+    }
+
+    /** Returns the number of R-R intervals in the range. */
+    public int getCount() {
+
+        return _count;
+    }
+
+    /** Returns the average heart rate. */
+    public double getHeartRate() {
+
+        return _heartRate;
+    }
+
+    /** Returns the RMSSD. */
+    public double getRMSSD() {
+
+        return _rmssd;
+    }
+
+    /** Returns the hrv score. */
+    public double getHRV() {
+
+        return _hrv;
+    }
+
+    /** Returns the coherence score. */
+    public double getCoherence() {
+
+        return _coherence;
+    }
+}
@@ -0,0 +1,156 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Histogram of R-R intervals with bins of 1/128 seconds, the standard width for the hrv triangular
+ * index. Intervals are counted and discounted in constant time and the geometric metrics are
+ * calculated in a few passes over the bins.
+ */
+class RrHistogram {
+
+    /** Bin width in milli seconds. */
+    static final double BIN_WIDTH = 1000.0 / 128;
+
+    /** Number of bins. They cover every interval up to OrderStatistics.MAX_VALUE. */
+    private static final int BINS = binOf(OrderStatistics.MAX_VALUE) + 1;
+
+    private final int[] _counts = new int[BINS];
+    private int _size = 0;
+
+    // Work buffers of the TINN search: prefix sums of D, i * D and D * D over the bins
+    private final double[] _sum = new double[BINS + 1];
+    private final double[] _weightedSum = new double[BINS + 1];
+    private final double[] _squaredSum = new double[BINS + 1];
+
+    /** Removes all the intervals. */
+    void clear() {
+
+        for (int i = 0; i < BINS; i++)
+            _counts[i] = 0;
+        _size = 0;
+    }
+
+    /** Counts an interval. */
+    void add(int rrInterval) {
+
+        _counts[binOf(rrInterval)]++;
+        _size++;
+    }
+
+    /** Discounts an interval previously counted. */
+    void remove(int rrInterval) {
+
+        _counts[binOf(rrInterval)]--;
+        _size--;
+    }
+
+    /**
+     * Calculates the geometric metrics of the histogram.
+     * @param minRR Shortest interval counted
+     * @param maxRR Longest interval counted
+     */
+    GeometricMetrics newMetrics(int minRR, int maxRR) {
+
+        if (_size == 0)
+            return GeometricMetrics.EMPTY;
+
+        // Modal bin. The shortest one if there are several
+        int mode = 0;
+        for (int i = 1; i < BINS; i++)
+            if (_counts[i] > _counts[mode])
+                mode = i;
+        int modeCount = _counts[mode];
+
+        double modeRR = (mode + 0.5) * BIN_WIDTH;
+        double amplitude = 100.0 * modeCount / _size;
+        int range = maxRR - minRR;
+
+        // Baevsky: AMo / (2 * Mo * MxDMn) with Mo and MxDMn in seconds
+        double stressIndex = range > 0 ? amplitude * 1000000 / (2 * modeRR * range) : 0;
+        double triangularIndex = (double) _size / modeCount;
+        return new GeometricMetrics(modeRR, amplitude, stressIndex, triangularIndex, getTINN(mode));
+    }
+
+    /**
+     * Returns the base width in milli seconds of the triangle that best fits the histogram by least squares.
+     * The triangle has its apex on the modal bin and is zero before bin n and after bin m. The squared
+     * error of the left side only depends on n and the one of the right side only on m, so each one
+     * is minimized separately with prefix sums.
+     */
+    private double getTINN(int mode) {
+
+        _sum[0] = 0;
+        _weightedSum[0] = 0;
+        _squaredSum[0] = 0;
+        for (int i = 0; i < BINS; i++) {
+
+            double d = _counts[i];
+            _sum[i + 1] = _sum[i] + d;
+            _weightedSum[i + 1] = _weightedSum[i] + i * d;
+            _squaredSum[i + 1] = _squaredSum[i] + d * d;
+        }
+        double apex = _counts[mode];
+
+        // Left side: zero in [0, n) and rising from 0 at n to the apex at the mode
+        int bestN = mode;
+        double bestLeft = _squaredSum[mode];
+        for (int n = 0; n < mode; n++) {
+
+            double length = mode - n;
+            double slope = apex / length;
+            double sumD = _sum[mode] - _sum[n];
+            double sumKD = (_weightedSum[mode] - _weightedSum[n]) - n * sumD;
+            double sumQQ = slope * slope * (length - 1) * length * (2 * length - 1) / 6;
+            double error = _squaredSum[n] + (_squaredSum[mode] - _squaredSum[n]) - 2 * slope * sumKD + sumQQ;
+            if (error < bestLeft) {
+
+                bestLeft = error;
+                bestN = n;
+            }
+        }
+
+        // Right side: falling from the apex at the mode to 0 at m and zero after m
+        int bestM = mode;
+        double bestRight = _squaredSum[BINS] - _squaredSum[mode + 1];
+        for (int m = mode + 1; m < BINS; m++) {
+
+            double length = m - mode;
+            double slope = apex / length;
+            double sumD = _sum[m + 1] - _sum[mode + 1];
+            double sumKD = m * sumD - (_weightedSum[m + 1] - _weightedSum[mode + 1]);
+            double sumQQ = slope * slope * (length - 1) * length * (2 * length - 1) / 6;
+            double error = (_squaredSum[m + 1] - _squaredSum[mode + 1]) - 2 * slope * sumKD + sumQQ
+                    + (_squaredSum[BINS] - _squaredSum[m + 1]);
+            if (error < bestRight) {
+
+                bestRight = error;
+                bestM = m;
+            }
+        }
+        return (bestM - bestN) * BIN_WIDTH;
+    }
+
+    /** Returns the bin of an interval. */
+    private static int binOf(int rrInterval) {
+
+        int value = rrInterval < 0 ? 0 : Math.min(rrInterval, OrderStatistics.MAX_VALUE);
+        return value * 128 / 1000;
+    }
+}
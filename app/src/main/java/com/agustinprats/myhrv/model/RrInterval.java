@@ -33,9 +33,6 @@ public class RrInterval {
     /** Maximum valid heart rate value. */
     public static final int MAX_HR = 190;
 
-    /** Ratio between two consecutives R-R intervals so the interval is considered valid. */
-    public static final float HEART_RATE_RATIO = 1.5f;
-
     private long _timestamp = 0;
     private int _rrInterval = 0;
     private Date _date = null;
@@ -55,14 +52,33 @@ public class RrInterval {
     public RrInterval(long timestamp, int rrInterval) {
 
         _timestamp = timestamp;
-        _date = new Date(timestamp);
         _rrInterval = rrInterval;
     }
 
+    /** Constructor used by RrIntervalList to build a view of a stored interval
+     *
+     * @param timestamp timestamp of the interval
+     * @param rrInterval interval value
+     * @param diff difference with the previous interval. Null if there is no previous one
+     * @param bfs BFS value from the coherence algorithm
+     */
+    RrInterval(long timestamp, int rrInterval, Integer diff, boolean bfs) {
+
+        this(timestamp, rrInterval);
+        _diff = diff;
+        _bfs = bfs;
+    }
+
+    /** Returns the heart rate of the given R-R interval. */
+    public static double getHeartRate(int rrInterval) {
+
+        return (60000.0 / (double) rrInterval);
+    }
+
     /** Returns the heart rate. */
     public double getHeartRate() {
 
-        return (60000.0 / (double) _rrInterval);
+        return getHeartRate(_rrInterval);
     }
 
     /** Returns the R-R interval. */
@@ -80,6 +96,9 @@ public class RrInterval {
     /** Returns the date. */
     public Date getDate() {
 
+        if (_date == null)
+            _date = new Date(_timestamp);
+
         return _date;
     }
 
@@ -110,37 +129,16 @@ public class RrInterval {
     /** Returns true if the interval is out of range. False otherwise. */
     public boolean isOutOfRange() {
 
-        if (this.getHeartRate() < MIN_HR || this.getHeartRate() > MAX_HR) {
-
-            return true;
-        }
-        return false;
+        return isOutOfRange(_rrInterval);
     }
 
-    /** Returns true is this interval is outlier. An outlier interval is when there is too much
-     * difference with the previous interval
-     *
-     * @param previous Previous R-R interval
-     * @return
-     */
-    public boolean isOutlier(RrInterval previous) {
+    /** Returns true if the given R-R interval is out of range. False otherwise. */
+    public static boolean isOutOfRange(int rrInterval) {
 
-        if (previous != null) {
+        double heartRate = getHeartRate(rrInterval);
+        if (heartRate < MIN_HR || heartRate > MAX_HR) {
 
-            double ratio;
-            if (previous.getHeartRate() > this.getHeartRate()) {
-
-                ratio = (previous.getHeartRate()/this.getHeartRate());
-            }
-            else {
-
-                ratio = (this.getHeartRate()/previous.getHeartRate());
-            }
-
-            if (ratio > HEART_RATE_RATIO) {
-
-                return true;
-            }
+            return true;
         }
         return false;
     }
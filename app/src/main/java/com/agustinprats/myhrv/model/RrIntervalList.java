@@ -20,9 +20,7 @@ package com.agustinprats.myhrv.model;
 
 import android.util.Log;
 
-import org.achartengine.model.TimeSeries;
-import org.achartengine.model.XYSeries;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Class that stores a list of R-R intervals and calculates coherence and hrv scores.
@@ -32,13 +30,107 @@ public class RrIntervalList {
     private final static String TAG = RrIntervalList.class.toString();
 
     /** Number of milliseconds used to calculate values */
-    private final static int TIME_WINDOW = 20000;
+    final static int TIME_WINDOW = 20000;
+
+    /** Number of milli seconds of the trend horizon. */
+    public static final int TREND_WINDOW = 60000;
+
+    /** Number of milli seconds of the standard short term hrv horizon. */
+    public static final int SHORT_TERM_WINDOW = 300000;
+
+    /** Default number of milli seconds displayed in the heart rate chart */
+    public static final int DEFAULT_CHART_SPAN = 20000;
 
     /** Number of hits before moving to the next coherence zone */
     public static final int ZONE_HITS = 3;
 
-    /** R-R interval list. */
-    private ArrayList<RrInterval> _list = new ArrayList<RrInterval>();
+    // Coherence calculation modes
+    /** Coherence from the beat to beat fluctuations that keep the same direction. */
+    public static final int COHERENCE_BFS = 0;
+    /** Coherence from the peak of the heart rhythm spectrum. */
+    public static final int COHERENCE_SPECTRAL = 1;
+
+    // Artifact flags of the corrected R-R intervals
+    /** Not corrected. */
+    public static final int ARTIFACT_NONE = 0;
+    /** Split evenly with the next or previous interval: a premature beat and its compensatory pause. */
+    public static final int ARTIFACT_ECTOPIC = 1;
+    /** Split from a longer interval that missed a beat. */
+    public static final int ARTIFACT_MISSED = 2;
+    /** Merged with the next interval because of an extra beat. */
+    public static final int ARTIFACT_EXTRA = 4;
+    /** Interpolated because it was too long. */
+    public static final int ARTIFACT_LONG = 8;
+    /** Interpolated because it was too short. */
+    public static final int ARTIFACT_SHORT = 16;
+
+    /** Initial capacity of the R-R interval store. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Number of milli seconds used to calculate the frequency domain metrics. */
+    private final static long SPECTRUM_WINDOW = MetricRegistry.getDescriptor(MetricRegistry.METRIC_SPECTRUM).getWindow();
+
+    /** Min number of milli seconds of R-R intervals to calculate the frequency domain metrics. */
+    private final static int MIN_SPECTRUM_WINDOW = 60000;
+
+    /** Milli seconds of R-R intervals between frequency domain updates. */
+    private final static long SPECTRUM_UPDATE_INTERVAL = MetricRegistry.getDescriptor(MetricRegistry.METRIC_SPECTRUM).getCadence();
+
+    /** Number of milli seconds displayed in the spectrogram. */
+    private final static long SPECTROGRAM_WINDOW = MetricRegistry.getDescriptor(MetricRegistry.METRIC_SPECTROGRAM).getWindow();
+
+    /** Number of milli seconds used to calculate the detrended fluctuation analysis. */
+    private final static long DFA_WINDOW = MetricRegistry.getDescriptor(MetricRegistry.METRIC_DFA).getWindow();
+
+    /** Number of milli seconds used to calculate the sample entropy. */
+    private final static long SAMPLE_ENTROPY_WINDOW = MetricRegistry.getDescriptor(MetricRegistry.METRIC_SAMPLE_ENTROPY).getWindow();
+
+    /** Number of milli seconds used to calculate the signal quality. */
+    private final static int QUALITY_WINDOW = 60000;
+
+    /** Milli seconds the wall clock can outrun the R-R intervals because of the packet timing. */
+    private final static int GAP_TOLERANCE = 1000;
+
+    /** Max number of dropped R-R intervals counted in the signal quality window. */
+    private final static int MAX_QUALITY_DROPS = 256;
+
+    // Columnar R-R interval store. The same position in every array belongs to the same interval.
+    /** Timestamps of the valid R-R intervals. */
+    private long[] _timestamps = new long[INITIAL_CAPACITY];
+
+    /** Valid R-R intervals in milli seconds. */
+    private int[] _rrIntervals = new int[INITIAL_CAPACITY];
+
+    /** BFS values of the valid R-R intervals packed 64 per word. */
+    private long[] _bfs = new long[INITIAL_CAPACITY >> 6];
+
+    /** Number of valid R-R intervals stored. */
+    private int _size = 0;
+
+    // Prefix sums over the store. Position i holds the sum over the positions before i.
+    /** Prefix sums of the R-R intervals. */
+    private long[] _rrPrefix = new long[INITIAL_CAPACITY + 1];
+
+    /** Prefix sums of the squared differences between each interval and the previous one. */
+    private long[] _squaredDiffPrefix = new long[INITIAL_CAPACITY + 1];
+
+    /** Prefix counts of the BFS values. */
+    private int[] _bfsPrefix = new int[INITIAL_CAPACITY + 1];
+
+    /** ARTIFACT_ flags of the R-R intervals. */
+    private byte[] _artifacts = new byte[INITIAL_CAPACITY];
+
+    /** Prefix counts of the corrected R-R intervals. */
+    private int[] _artifactPrefix = new int[INITIAL_CAPACITY + 1];
+
+    /** Corrects the artifacts of the valid R-R intervals before they are stored. */
+    private final ArtifactCorrector _corrector = new ArtifactCorrector();
+
+    /** Min and max index over the stored R-R intervals. */
+    private RrRangeIndex _rangeIndex = new RrRangeIndex();
+
+    /** Work buffer of the min and max R-R intervals read from the range index. */
+    private final int[] _minMaxRR = new int[2];
 
     /** Total measured time in seconds. */
     private int _measuredTime = 0;
@@ -46,35 +138,170 @@ public class RrIntervalList {
     /** Number of R-R intervals dropped for being invalid. */
     private int _droppedCount = 0;
 
-    /** Current coherence zone. */
-    private CoherenceZone _coherenceZone = null;
-
-    /** Next coherence zone candidate. */
-    private CoherenceZone _nextCoherenceZone = null;
+    /** Current coherence zone of the session. */
+    private final CoherenceZoneTracker _zoneTracker = new CoherenceZoneTracker(ZONE_HITS);
     private RrIntervalListListener _listener = null;
 
     /** R-R intervals out of range in a row. */
     private int _outOfRangeInARow = 0;
 
-    /** R-R outliers intervals in a row. */
-    private int _outliersInARow = 0;
+    /** Sliding window over the last QUALITY_WINDOW milli seconds. */
+    private final RrWindow _qualityWindow;
+
+    /** R-R intervals dropped in the last QUALITY_WINDOW milli seconds. */
+    private final EventWindow _qualityDrops = new EventWindow(QUALITY_WINDOW, MAX_QUALITY_DROPS);
+
+    /**
+     * Sliding windows of every distinct length sorted by length, the one covering the whole list
+     * first. Each new interval is charged to all of them and expired from them in a single loop.
+     */
+    private final RrWindow[] _windows;
+
+    /** Windows of the horizons requested at construction sorted by length. */
+    private final RrWindow[] _horizons;
+
+    /** Sliding window over the last TIME_WINDOW milli seconds. */
+    private final RrWindow _instantWindow;
+
+    /** Window covering all the valid R-R intervals. */
+    private final RrWindow _totalWindow;
+
+    /** Sliding window over the milli seconds displayed in the heart rate chart. */
+    private final RrWindow _chartWindow;
+
+    /** Periodogram of the R-R intervals in the last SPECTRUM_WINDOW. */
+    private LombScarglePeriodogram _periodogram = new LombScarglePeriodogram(FrequencyMetrics.HF_MAX);
+
+    // Beat times in seconds and R-R intervals passed to the periodogram. Reused between updates.
+    private double[] _spectrumTimes = new double[256];
+    private double[] _spectrumValues = new double[256];
+
+    /** Sum of the R-R intervals when the periodogram was last updated. */
+    private long _spectrumUpdatedAt = 0;
+
+    /** Frequency domain metrics of the periodogram. Null until requested after each update. */
+    private FrequencyMetrics _frequencyMetrics = null;
+
+    /** Sliding window over the last DFA_WINDOW milli seconds. */
+    private final RrWindow _dfaWindow;
+
+    /** Detrended fluctuation analysis of the R-R intervals in _dfaWindow. */
+    private final DetrendedFluctuation _dfa = new DetrendedFluctuation(DFA_WINDOW);
+
+    /** Position of the first interval added to _dfa. */
+    private int _dfaOffset = 0;
+
+    /** Sliding window over the last SAMPLE_ENTROPY_WINDOW milli seconds. */
+    private final RrWindow _sampleEntropyWindow;
+
+    /** Sample entropy of the R-R intervals in _sampleEntropyWindow. */
+    private final SampleEntropy _sampleEntropy = new SampleEntropy(SAMPLE_ENTROPY_WINDOW);
 
-    /** High accuracy series including all the points. */
-    TimeSeries _heartRateSeries = new TimeSeries("");
+    /** Position of the first interval added to _sampleEntropy. */
+    private int _sampleEntropyOffset = 0;
+
+    /** Spectrogram of the tachogram displayed live. */
+    private final Spectrogram _spectrogram = new Spectrogram();
+
+    /** Copy of the spectrogram. Null until requested after each new column. */
+    private SpectrogramFrame _spectrogramFrame = null;
+
+    /** Subscriptions to the optional metrics. Null to calculate all of them. */
+    private MetricRegistry _registry = null;
+
+    /** True for the optional metrics updated by the list, in MetricRegistry.METRIC_ order. */
+    private final boolean[] _metricActive = new boolean[MetricRegistry.METRIC_COUNT];
+
+    /** Sum of the R-R intervals when each optional metric was last published or -1 if never. */
+    private final long[] _metricUpdatedAt = new long[MetricRegistry.METRIC_COUNT];
+
+    /** Last snapshot created. Its values are reused for the metrics not due yet. */
+    private MetricsSnapshot _lastSnapshot = null;
+
+    /** Coherence calculation mode. */
+    private final int _coherenceMode;
+
+    /** Spectral coherence calculator. Null if the coherence mode is COHERENCE_BFS. */
+    private final SpectralCoherence _spectralCoherence;
 
     // Caching calculated values
     double _cachedHeartRate;
     double _cachedInstantHeartRate;
     double _cachedHRV;
     double _cachedInstantHRV;
+    double _cachedSD1;
+    double _cachedInstantSD1;
+    double _cachedSD2;
+    double _cachedInstantSD2;
+    TimeDomainMetrics _cachedTimeDomainMetrics;
+    TimeDomainMetrics _cachedInstantTimeDomainMetrics;
+    GeometricMetrics _cachedGeometricMetrics;
+    GeometricMetrics _cachedInstantGeometricMetrics;
+    SignalQuality _cachedSignalQuality;
     double _cachedCoherence;
     double _cachedInstantCoherence;
-    double _instantMax;
-    double _instantMin;
 
     /** Public constructor. */
     public RrIntervalList() {
 
+        this(DEFAULT_CHART_SPAN);
+    }
+
+    /**
+     * Public constructor
+     * @param chartSpan Number of milli seconds displayed in the heart rate chart
+     */
+    public RrIntervalList(long chartSpan) {
+
+        this(chartSpan, COHERENCE_BFS);
+    }
+
+    /**
+     * Public constructor
+     * @param chartSpan Number of milli seconds displayed in the heart rate chart
+     * @param coherenceMode COHERENCE_BFS or COHERENCE_SPECTRAL
+     */
+    public RrIntervalList(long chartSpan, int coherenceMode) {
+
+        this(chartSpan, coherenceMode, new long[] { TIME_WINDOW, TREND_WINDOW, SHORT_TERM_WINDOW });
+    }
+
+    /**
+     * Public constructor
+     * @param chartSpan Number of milli seconds displayed in the heart rate chart
+     * @param coherenceMode COHERENCE_BFS or COHERENCE_SPECTRAL
+     * @param horizons Window lengths in milli seconds whose metrics are kept up to date
+     */
+    public RrIntervalList(long chartSpan, int coherenceMode, long[] horizons) {
+
+        // Windows needed by the list itself plus the requested horizons, one per distinct length
+        long[] lengths = Arrays.copyOf(horizons, horizons.length + 6);
+        lengths[horizons.length] = 0;
+        lengths[horizons.length + 1] = TIME_WINDOW;
+        lengths[horizons.length + 2] = chartSpan;
+        lengths[horizons.length + 3] = DFA_WINDOW;
+        lengths[horizons.length + 4] = SAMPLE_ENTROPY_WINDOW;
+        lengths[horizons.length + 5] = QUALITY_WINDOW;
+        lengths = sortedDistinct(lengths);
+        _windows = new RrWindow[lengths.length];
+        for (int i = 0; i < lengths.length; i++)
+            _windows[i] = new RrWindow(lengths[i]);
+
+        long[] horizonLengths = sortedDistinct(horizons);
+        _horizons = new RrWindow[horizonLengths.length];
+        for (int i = 0; i < horizonLengths.length; i++)
+            _horizons[i] = getWindow(horizonLengths[i]);
+
+        _totalWindow = getWindow(0);
+        _instantWindow = getWindow(TIME_WINDOW);
+        _chartWindow = getWindow(chartSpan);
+        _dfaWindow = getWindow(DFA_WINDOW);
+        _sampleEntropyWindow = getWindow(SAMPLE_ENTROPY_WINDOW);
+        _qualityWindow = getWindow(QUALITY_WINDOW);
+        Arrays.fill(_metricActive, true);
+        updateWindowStatistics();
+        _coherenceMode = coherenceMode;
+        _spectralCoherence = coherenceMode == COHERENCE_SPECTRAL ? new SpectralCoherence() : null;
         clear();
     }
 
@@ -82,12 +309,28 @@ public class RrIntervalList {
     public void clear() {
 
         _measuredTime = 0;
-        _list.clear();
-        _heartRateSeries.clear();
+        _size = 0;
+        _rangeIndex.clear();
+        for (RrWindow window : _windows)
+            window.clear();
+        _dfa.clear();
+        _dfaOffset = 0;
+        _sampleEntropy.clear();
+        _sampleEntropyOffset = 0;
+        Arrays.fill(_metricUpdatedAt, -1);
+        _lastSnapshot = null;
+        _periodogram.clear();
+        _spectrumUpdatedAt = 0;
+        if (_spectralCoherence != null)
+            _spectralCoherence.clear();
+        _frequencyMetrics = null;
+        _spectrogram.clear();
+        _spectrogramFrame = null;
         _droppedCount = 0;
-        _coherenceZone = CoherenceZone.get(0, null);
-        _coherenceZone.resetHits();
-        _nextCoherenceZone = null;
+        _outOfRangeInARow = 0;
+        _qualityDrops.clear();
+        _corrector.clear();
+        _zoneTracker.clear();
         resetCachedValues();
     }
 
@@ -97,10 +340,17 @@ public class RrIntervalList {
         _cachedInstantHeartRate = -1;
         _cachedHRV = -1;
         _cachedInstantHRV = -1;
+        _cachedSD1 = -1;
+        _cachedInstantSD1 = -1;
+        _cachedSD2 = -1;
+        _cachedInstantSD2 = -1;
+        _cachedTimeDomainMetrics = null;
+        _cachedInstantTimeDomainMetrics = null;
+        _cachedGeometricMetrics = null;
+        _cachedInstantGeometricMetrics = null;
+        _cachedSignalQuality = null;
         _cachedCoherence = -1;
         _cachedInstantCoherence = -1;
-        _instantMax = -1;
-        _instantMin = -1;
     }
 
     /**
@@ -110,72 +360,287 @@ public class RrIntervalList {
      */
     public boolean add(RrInterval rrInterval) {
 
-        // Checks if it's valid
-        RrInterval prevRRInterval = getLast();
-        boolean isOutlier = rrInterval.isOutlier(prevRRInterval);
-        boolean isOutOfRange = rrInterval.isOutOfRange();
-        if ((isOutlier && _outliersInARow < 3) || isOutOfRange) { // invalid interval
+        return add(rrInterval.getTimestamp(), rrInterval.getRRInterval());
+    }
 
-            Log.e(TAG, "Discarding interval: " + rrInterval.getHeartRate());
-            incrementDroppedCount(1);
-            if (isOutOfRange)
-                _outOfRangeInARow++;
-            if (isOutlier)
-                _outliersInARow++;
+    /**
+     * Adds a R-R Interval to the list. Valid intervals are stored once the next one arrives,
+     * after correcting their artifacts.
+     * @param timestamp Timestamp of the interval
+     * @param rrInterval R-R interval value in milli seconds
+     * @return True if accepted or false if discarded
+     */
+    public boolean add(long timestamp, int rrInterval) {
 
-            return false;
+        updateSubscriptions();
+        if (accept(timestamp, rrInterval)) {
+
+            resetCachedValues();
+            return true;
         }
-        else { // valid interval
+        return false;
+    }
+
+    /**
+     * Adds the R-R intervals received together in a packet from the heart rate device.
+     * Each interval is validated, corrected and processed by the coherence zone algorithm in order,
+     * exactly as if they were added one by one.
+     * @param timestamp Timestamp of the last interval of the packet
+     * @param rrIntervals R-R interval values in milli seconds
+     * @param offset Position in rrIntervals of the first interval of the packet
+     * @param count Number of intervals in the packet
+     * @return Number of intervals stored. It can differ from the valid ones because of the corrections
+     */
+    public int addAll(long timestamp, int[] rrIntervals, int offset, int count) {
+
+        updateSubscriptions();
+
+        // Every interval ends when the next one begins
+        long remaining = 0;
+        for (int i = offset; i < offset + count; i++)
+            remaining += rrIntervals[i];
 
-            //Log.d(TAG, "Adding interval: " + rrInterval.getHeartRate());
+        int firstAdded = _size;
+        for (int i = offset; i < offset + count; i++) {
 
-            _outOfRangeInARow = 0;
-            _outliersInARow = 0;
+            remaining -= rrIntervals[i];
+            accept(timestamp - remaining, rrIntervals[i]);
+        }
 
+        if (_size > firstAdded)
             resetCachedValues();
 
-            // Update Coherence vars for Coherence algorithm
-            if (_list.size() > 0) {
+        return _size - firstAdded;
+    }
 
-                rrInterval.setPrevious(_list.get(_list.size() - 1));
-            }
+    /**
+     * Validates a R-R interval and passes it to the artifact corrector if it's valid.
+     * The intervals corrected are stored and processed by the coherence zone algorithm.
+     * @return True if accepted or false if discarded
+     */
+    private boolean accept(long timestamp, int rrInterval) {
 
-            _list.add(rrInterval);
-            _measuredTime += rrInterval.getRRInterval();
+        if (RrInterval.isOutOfRange(rrInterval)) { // invalid interval
 
-            updateTimeSeries(rrInterval);
+            Log.e(TAG, "Discarding interval: " + RrInterval.getHeartRate(rrInterval));
+            incrementDroppedCount(1);
+            _outOfRangeInARow++;
+            _qualityDrops.add(timestamp);
+            _cachedSignalQuality = null;
+            return false;
+        }
 
-            updateCoherenceZone();
+        _outOfRangeInARow = 0;
+        _corrector.add(timestamp, rrInterval);
+        for (int i = 0; i < _corrector.getCount(); i++) {
 
-            return true;
+            append(_corrector.getTimestamp(i), _corrector.getRRInterval(i), _corrector.getArtifacts(i));
+            _measuredTime += _corrector.getRRInterval(i);
+            updateCoherenceZone(_corrector.getTimestamp(i), _corrector.getRRInterval(i));
         }
+        return true;
     }
 
-    /** Returns dropped intervals in a row. */
-    public int getDroppedInARow() {
+    /** Stores a valid R-R interval at the end of the columnar store. */
+    private void append(long timestamp, int rrInterval, int artifacts) {
+
+        if (_size == _rrIntervals.length) {
+
+            int capacity = _rrIntervals.length << 1;
+            _timestamps = Arrays.copyOf(_timestamps, capacity);
+            _rrIntervals = Arrays.copyOf(_rrIntervals, capacity);
+            _bfs = Arrays.copyOf(_bfs, capacity >> 6);
+            _rrPrefix = Arrays.copyOf(_rrPrefix, capacity + 1);
+            _squaredDiffPrefix = Arrays.copyOf(_squaredDiffPrefix, capacity + 1);
+            _bfsPrefix = Arrays.copyOf(_bfsPrefix, capacity + 1);
+            _artifacts = Arrays.copyOf(_artifacts, capacity);
+            _artifactPrefix = Arrays.copyOf(_artifactPrefix, capacity + 1);
+        }
 
-        return getOutOfRangeInARow() + getOutliersInARow();
+        // Timestamps are kept non decreasing so they can be binary searched
+        int position = _size;
+        if (position > 0 && timestamp < _timestamps[position - 1])
+            timestamp = _timestamps[position - 1];
+        _timestamps[position] = timestamp;
+        _rrIntervals[position] = rrInterval;
+
+        // Coherence algorithm: same direction than the previous difference
+        boolean bfs = false;
+        if (position >= 2) {
+
+            int diff = rrInterval - _rrIntervals[position - 1];
+            int prevDiff = _rrIntervals[position - 1] - _rrIntervals[position - 2];
+            bfs = (diff > 0 && prevDiff > 0) || (diff < 0 && prevDiff < 0);
+        }
+        if (bfs)
+            _bfs[position >> 6] |= 1L << position;
+        else
+            _bfs[position >> 6] &= ~(1L << position);
+
+        long diff = position >= 1 ? rrInterval - _rrIntervals[position - 1] : 0;
+        _rrPrefix[position + 1] = _rrPrefix[position] + rrInterval;
+        _squaredDiffPrefix[position + 1] = _squaredDiffPrefix[position] + diff * diff;
+        _bfsPrefix[position + 1] = _bfsPrefix[position] + (bfs ? 1 : 0);
+        _artifacts[position] = (byte) artifacts;
+        _artifactPrefix[position + 1] = _artifactPrefix[position] + (artifacts != ARTIFACT_NONE ? 1 : 0);
+
+        _size++;
+
+        _rangeIndex.add(rrInterval);
+        for (RrWindow window : _windows)
+            window.onAdded(this, rrInterval, diff, bfs);
+        if (_metricActive[MetricRegistry.METRIC_DFA])
+            _dfa.add(rrInterval, _dfaWindow.getBegin() - _dfaOffset);
+        if (_metricActive[MetricRegistry.METRIC_SAMPLE_ENTROPY])
+            _sampleEntropy.add(rrInterval, _sampleEntropyWindow.getBegin() - _sampleEntropyOffset);
+
+        double beatTime = _rrPrefix[_size] / 1000.0;
+        if (_spectralCoherence != null)
+            _spectralCoherence.add(beatTime, rrInterval);
+        if (_metricActive[MetricRegistry.METRIC_SPECTROGRAM] && _spectrogram.add(beatTime, rrInterval))
+            _spectrogramFrame = null;
+
+        if (_metricActive[MetricRegistry.METRIC_SPECTRUM] && _rrPrefix[_size] - _spectrumUpdatedAt >= SPECTRUM_UPDATE_INTERVAL)
+            updateSpectrum();
     }
 
-    /** Returns out of range intervals in a row. */
-    public int getOutOfRangeInARow() {
+    /**
+     * Sets the subscriptions to the optional metrics. They are applied before the next update.
+     * @param registry Subscriptions or null to calculate all the metrics
+     */
+    public void setMetricRegistry(MetricRegistry registry) {
 
-        return _outOfRangeInARow;
+        _registry = registry;
+    }
+
+    /** Starts updating the metrics that got subscribers and stops the ones that lost them. */
+    private void updateSubscriptions() {
+
+        for (int metric = 0; metric < MetricRegistry.METRIC_COUNT; metric++) {
+
+            boolean active = _registry == null || _registry.isSubscribed(metric);
+            if (active && !_metricActive[metric])
+                activateMetric(metric);
+            _metricActive[metric] = active;
+        }
+        updateWindowStatistics();
+    }
+
+    /**
+     * Keeps the window statistics of the active metrics in the windows that publish them and no others.
+     * Statistics that start being kept are rebuilt from the intervals in the window.
+     */
+    private void updateWindowStatistics() {
+
+        int statistics = RrWindow.STATS_NONE;
+        if (_metricActive[MetricRegistry.METRIC_TIME_DOMAIN])
+            statistics |= RrWindow.STATS_TIME_DOMAIN;
+        if (_metricActive[MetricRegistry.METRIC_GEOMETRIC])
+            statistics |= RrWindow.STATS_GEOMETRIC;
+        if (_metricActive[MetricRegistry.METRIC_POINCARE])
+            statistics |= RrWindow.STATS_POINCARE;
+
+        if (_totalWindow.getStatistics() != statistics)
+            _totalWindow.setStatistics(this, statistics);
+        if (_instantWindow.getStatistics() != statistics)
+            _instantWindow.setStatistics(this, statistics);
+    }
+
+    /** Rebuilds the state of a metric that starts being updated from the stored R-R intervals in its window. */
+    private void activateMetric(int metric) {
+
+        _metricUpdatedAt[metric] = -1;
+        switch (metric) {
+
+            case MetricRegistry.METRIC_SPECTRUM:
+
+                updateSpectrum();
+                break;
+            case MetricRegistry.METRIC_SPECTROGRAM:
+
+                _spectrogram.clear();
+                for (int i = getWindowBegin(SPECTROGRAM_WINDOW); i < _size; i++)
+                    _spectrogram.add(_rrPrefix[i + 1] / 1000.0, _rrIntervals[i]);
+                _spectrogramFrame = null;
+                break;
+            case MetricRegistry.METRIC_DFA:
+
+                _dfa.clear();
+                _dfaOffset = _dfaWindow.getBegin();
+                for (int i = _dfaOffset; i < _size; i++)
+                    _dfa.add(_rrIntervals[i], 0);
+                break;
+            case MetricRegistry.METRIC_SAMPLE_ENTROPY:
+
+                _sampleEntropy.clear();
+                _sampleEntropyOffset = _sampleEntropyWindow.getBegin();
+                for (int i = _sampleEntropyOffset; i < _size; i++)
+                    _sampleEntropy.add(_rrIntervals[i], 0);
+                break;
+        }
     }
 
-    /** Returns outliers intervals in a row. */
-    public int getOutliersInARow() {
+    /** Returns true if an optional metric is being updated. */
+    public boolean isMetricActive(int metric) {
 
-        return _outliersInARow;
+        return _metricActive[metric];
     }
 
-    /** Adds the R-R interval to the time series. */
-    private void updateTimeSeries(RrInterval rrInterval) {
+    /** Returns true if an active metric should be calculated again for the next snapshot according to its cadence. */
+    boolean isMetricDue(int metric) {
+
+        if (!_metricActive[metric])
+            return false;
 
-        // Update heart rate series
-        double heartRate = rrInterval.getHeartRate();
-        if (heartRate > 0)
-            _heartRateSeries.add(rrInterval.getDate(), heartRate);
+        long updatedAt = _metricUpdatedAt[metric];
+        return updatedAt < 0 || _rrPrefix[_size] - updatedAt >= MetricRegistry.getDescriptor(metric).getCadence();
+    }
+
+    /** Records that a metric was calculated for a snapshot. */
+    void onMetricUpdated(int metric) {
+
+        _metricUpdatedAt[metric] = _rrPrefix[_size];
+    }
+
+    /** Calculates the periodogram of the R-R intervals in the last SPECTRUM_WINDOW. */
+    private void updateSpectrum() {
+
+        _spectrumUpdatedAt = _rrPrefix[_size];
+        _frequencyMetrics = null;
+
+        int from = getWindowBegin(SPECTRUM_WINDOW);
+        if (_rrPrefix[_size] - _rrPrefix[from] < MIN_SPECTRUM_WINDOW) {
+
+            _periodogram.clear();
+            return;
+        }
+
+        int count = _size - from;
+        if (_spectrumTimes.length < count) {
+
+            _spectrumTimes = new double[count << 1];
+            _spectrumValues = new double[count << 1];
+        }
+
+        // Each beat happens when its interval ends
+        for (int i = from; i < _size; i++) {
+
+            _spectrumTimes[i - from] = _rrPrefix[i + 1] / 1000.0;
+            _spectrumValues[i - from] = _rrIntervals[i];
+        }
+        _periodogram.compute(_spectrumTimes, _spectrumValues, count);
+    }
+
+    /** Returns dropped intervals in a row. */
+    public int getDroppedInARow() {
+
+        return getOutOfRangeInARow();
+    }
+
+    /** Returns out of range intervals in a row. */
+    public int getOutOfRangeInARow() {
+
+        return _outOfRangeInARow;
     }
 
     /** Increments the total dropped R-R intervals counter. */
@@ -190,6 +655,53 @@ public class RrIntervalList {
         return _droppedCount;
     }
 
+    /** Returns the ARTIFACT_ flags of the R-R interval stored in the given position. */
+    public int getArtifacts(int position) {
+
+        return _artifacts[position];
+    }
+
+    /** Returns the number of stored R-R intervals that were corrected. */
+    public int getArtifactCount() {
+
+        return _artifactPrefix[_size];
+    }
+
+    /** Returns the rate of stored R-R intervals that were corrected. */
+    public float getArtifactRate() {
+
+        return _size > 0 ? (float) getArtifactCount() / _size : 0;
+    }
+
+    /** Returns the signal quality of the last minute. Empty until an interval is stored. */
+    public SignalQuality getSignalQuality() {
+
+        if (_cachedSignalQuality == null) {
+
+            int count = _qualityWindow.getCount();
+            if (count == 0) {
+
+                _cachedSignalQuality = SignalQuality.EMPTY;
+            }
+            else {
+
+                int begin = _qualityWindow.getBegin();
+                long now = _timestamps[_size - 1];
+                int dropped = _qualityDrops.count(now);
+
+                // Wall clock time since the oldest interval of the window began
+                long wallTime = now - _timestamps[begin] + _rrIntervals[begin];
+                long gap = Math.max(0, wallTime - _qualityWindow.getSum() - GAP_TOLERANCE);
+
+                _cachedSignalQuality = new SignalQuality(
+                        (double) dropped / (dropped + count),
+                        wallTime > 0 ? Math.min(1, (double) gap / wallTime) : 0,
+                        (double) (_artifactPrefix[_size] - _artifactPrefix[begin]) / count);
+            }
+        }
+        return _cachedSignalQuality;
+    }
+
     /** Returns the dropped R-R intervals rate. */
     public float getDroppedRate() {
 
@@ -200,13 +712,19 @@ public class RrIntervalList {
     /** Returns the number of valid R-R intervals stored. */
     public int size() {
 
-        return _list.size();
+        return _size;
     }
 
-    /** Returns the heart rate time series. */
-    public XYSeries getHeartRateSeries() {
+    /**
+     * Creates an immutable snapshot of the current metrics that can be read from any thread.
+     * Optional metrics without subscribers are empty and the ones not due yet keep their previous values.
+     * @param added Number of newest intervals to include as new in the snapshot
+     */
+    public MetricsSnapshot newSnapshot(int added) {
 
-        return _heartRateSeries;
+        updateSubscriptions();
+        _lastSnapshot = new MetricsSnapshot(this, added, _lastSnapshot);
+        return _lastSnapshot;
     }
 
     /** Returns the total measured time in seconds. */
@@ -215,95 +733,248 @@ public class RrIntervalList {
         return _measuredTime;
     }
 
-    /** Returns the valid R-R interval stored in the given position. */
+    /** Returns a view of the valid R-R interval stored in the given position. */
     public RrInterval get(int position) {
 
-        return _list.get(position);
+        if (position < 0 || position >= _size)
+            throw new IndexOutOfBoundsException("Invalid position: " + position + ", size: " + _size);
+
+        Integer diff = position > 0 ? _rrIntervals[position] - _rrIntervals[position - 1] : null;
+        return new RrInterval(_timestamps[position], _rrIntervals[position], diff, getBFS(position));
+    }
+
+    /** Returns the R-R interval value stored in the given position. */
+    public int getRRInterval(int position) {
+
+        return _rrIntervals[position];
+    }
+
+    /** Returns the timestamp of the R-R interval stored in the given position. */
+    public long getTimestamp(int position) {
+
+        return _timestamps[position];
+    }
+
+    /** Returns the BFS value of the R-R interval stored in the given position. */
+    public boolean getBFS(int position) {
+
+        return (_bfs[position >> 6] & (1L << position)) != 0;
+    }
+
+    /** Returns the lengths sorted without repetitions. Lengths of zero or less become zero. */
+    private static long[] sortedDistinct(long[] lengths) {
+
+        long[] sorted = new long[lengths.length];
+        for (int i = 0; i < lengths.length; i++)
+            sorted[i] = Math.max(0, lengths[i]);
+        Arrays.sort(sorted);
+
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++)
+            if (count == 0 || sorted[i] != sorted[count - 1])
+                sorted[count++] = sorted[i];
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /** Returns the sliding window that covers the last specified milli seconds or null if not kept. */
+    private RrWindow getWindow(long millis) {
+
+        long length = Math.max(0, millis);
+        int lo = 0;
+        int hi = _windows.length - 1;
+        while (lo <= hi) {
+
+            int mid = (lo + hi) >>> 1;
+            long midLength = _windows[mid].getLength();
+            if (midLength < length)
+                lo = mid + 1;
+            else if (midLength > length)
+                hi = mid - 1;
+            else
+                return _windows[mid];
+        }
+        return null;
+    }
+
+    /** Returns the number of horizons kept up to date. */
+    public int getHorizonCount() {
+
+        return _horizons.length;
+    }
+
+    /** Returns the sliding window of a horizon. Horizons are sorted by length. */
+    public RrWindow getHorizon(int index) {
+
+        return _horizons[index];
+    }
+
+    /** Returns the sliding window that covers the last specified milli seconds or null if it isn't a horizon. */
+    public RrWindow getHorizon(long millis) {
+
+        for (RrWindow horizon : _horizons)
+            if (horizon.getLength() == Math.max(0, millis))
+                return horizon;
+        return null;
     }
 
     /** Returns the average R-R interval in the last specified milli seconds. */
     private double getAverageRR(long millis) {
 
-        double result = 0;
-        int sum = 0;
-        int count = 0;
-        for (int i = _list.size() - 1; i >= 0; i--) {
+        RrWindow window = getWindow(millis);
+        if (window != null)
+            return window.getAverageRR();
 
-            RrInterval rrInterval = _list.get(i);
-            sum += rrInterval.getRRInterval();
-            count++;
+        return getAverageRR(getWindowBegin(millis), _size);
+    }
 
-            if (millis > 0 && sum >= millis) break;
-        }
+    /** Returns the average R-R interval of the positions [from, to) truncated to milli seconds. */
+    private double getAverageRR(int from, int to) {
+
+        double result = 0;
+        int count = to - from;
         if (count > 0) {
 
-            result = sum / count;
+            result = (_rrPrefix[to] - _rrPrefix[from]) / count;
         }
         return result;
     }
 
-    /** Updates the min and max values in the time defined in the TIME_WINDOW. */
-    private void updateInstantMinMax() {
-
-        int sum = 0;
-        for (int i = _list.size() - 1; i >= 0; i--) {
+    /**
+     * Returns the position of the oldest interval of the fewest newest intervals that
+     * sum at least the specified milli seconds. Zero if all of them sum less or millis is zero or less.
+     */
+    private int getWindowBegin(long millis) {
 
-            RrInterval rrInterval = _list.get(i);
-            sum += rrInterval.getRRInterval();
+        if (millis <= 0 || _size == 0)
+            return 0;
 
-            if (_instantMin == -1 || rrInterval.getHeartRate() < _instantMin)
-                _instantMin = rrInterval.getHeartRate();
+        // Largest position whose following intervals still cover millis
+        long limit = _rrPrefix[_size] - millis;
+        int lo = 0;
+        int hi = _size - 1;
+        if (_rrPrefix[lo] > limit)
+            return 0;
+        while (lo < hi) {
 
-            if (_instantMax == -1 || rrInterval.getHeartRate() > _instantMax)
-                _instantMax = rrInterval.getHeartRate();
+            int mid = (lo + hi + 1) >>> 1;
+            if (_rrPrefix[mid] <= limit)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
 
-            if (TIME_WINDOW > 0 && sum >= TIME_WINDOW) break;
+    /**
+     * Returns the position of the oldest interval i of the fewest newest pairs (i - 1, i) whose
+     * intervals sum at least the specified milli seconds. One if all of them sum less or millis is zero or less.
+     */
+    private int getPairWindowBegin(long millis) {
+
+        if (millis <= 0 || _size < 2)
+            return 1;
+
+        // Pairs from position i sum (prefix[size] - prefix[i]) + (prefix[size - 1] - prefix[i - 1])
+        long total = _rrPrefix[_size] + _rrPrefix[_size - 1];
+        int lo = 1;
+        int hi = _size - 1;
+        if (total - _rrPrefix[lo] - _rrPrefix[lo - 1] < millis)
+            return 1;
+        while (lo < hi) {
+
+            int mid = (lo + hi + 1) >>> 1;
+            if (total - _rrPrefix[mid] - _rrPrefix[mid - 1] >= millis)
+                lo = mid;
+            else
+                hi = mid - 1;
         }
+        return lo;
     }
 
     /** Returns the max value in the time defined in the TIME_WINDOW. */
     public double getInstantMaxHeartRate() {
 
-        if (_instantMax == -1)
-            updateInstantMinMax();
-
-        return _instantMax;
+        return _instantWindow.getMaxHeartRate();
     }
 
     /**
      * Calculates the max and min Heart rate between two timestamps. Begin should be smaller than end.
      * @param begin Timestamp of the begin window to calculate max and min
      * @param end Timestamp of the end window to calculate max and min
-     * @return Array in which first position it's min and in seconds position max
+     * @param result Array of at least two positions that receives the min in the first one and the max
+     *               in the second one. They are 300 and 0 if there are no intervals between the timestamps
+     * @return The result array
      */
-    public double[] getMinMaxHeartRate(long begin, long end) {
+    public double[] getMinMaxHeartRate(long begin, long end, double[] result) {
 
-        // Iterate over intervals
-        double result[] = new double[] {300.0, 0.0};
-        for (int i = _list.size() - 1; i >= 0; i--) {
+        result[0] = 300.0;
+        result[1] = 0.0;
+        int from = search(begin, true);
+        int to = search(end, false);
+        if (from < to) {
 
-            long timestamp = _list.get(i).getTimestamp();
-            if (timestamp < end && timestamp > begin) {
-                Double current = _list.get(i).getHeartRate();
-                if (current > result[1]) result[1] = current;
-                if (current < result[0]) result[0] = current;
-            }
-            else if ( timestamp < begin) {
+            _rangeIndex.getMinMax(from, to, _minMaxRR);
 
-                break;
-            }
+            // The shortest interval has the highest heart rate
+            double min = RrInterval.getHeartRate(_minMaxRR[1]);
+            double max = RrInterval.getHeartRate(_minMaxRR[0]);
+            if (max > result[1]) result[1] = max;
+            if (min < result[0]) result[0] = min;
         }
 
         return result;
     }
 
+    /**
+     * Binary searches the stored timestamps.
+     * @param timestamp Timestamp to search
+     * @param after True to skip the intervals with the same timestamp
+     * @return Position of the first interval with a timestamp bigger than the given one
+     *         (or bigger or equal if after is false). Size of the list if there is none
+     */
+    private int search(long timestamp, boolean after) {
+
+        int lo = 0;
+        int hi = _size;
+        while (lo < hi) {
+
+            int mid = (lo + hi) >>> 1;
+            if (_timestamps[mid] < timestamp || (after && _timestamps[mid] == timestamp))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
     /** Returns the min value in the time defined in the TIME_WINDOW. */
     public double getInstantMinHeartRate() {
 
-        if (_instantMin == -1)
-            updateInstantMinMax();
+        return _instantWindow.getMinHeartRate();
+    }
+
+    /** Returns the number of milli seconds displayed in the heart rate chart. */
+    public long getChartSpan() {
 
-        return _instantMin;
+        return _chartWindow.getLength();
+    }
+
+    /** Returns the window over the time displayed in the heart rate chart. */
+    RrWindow getChartWindow() {
+
+        return _chartWindow;
+    }
+
+    /** Returns the max heart rate in the time displayed in the heart rate chart. */
+    public double getChartMaxHeartRate() {
+
+        return _chartWindow.getMaxHeartRate();
+    }
+
+    /** Returns the min heart rate in the time displayed in the heart rate chart. */
+    public double getChartMinHeartRate() {
+
+        return _chartWindow.getMinHeartRate();
     }
 
     /** Returns the total average R-R interval. */
@@ -379,6 +1050,134 @@ public class RrIntervalList {
         return Math.log(rmssd) * 20;
     }
 
+    /** Returns the total time domain metrics. */
+    public TimeDomainMetrics getTimeDomainMetrics() {
+
+        if (_cachedTimeDomainMetrics != null)
+            return _cachedTimeDomainMetrics;
+
+        _cachedTimeDomainMetrics = _totalWindow.newTimeDomainMetrics();
+
+        return _cachedTimeDomainMetrics;
+    }
+
+    /** Returns the time domain metrics in the last time defined in TIME_WINDOW. */
+    public TimeDomainMetrics getInstantTimeDomainMetrics() {
+
+        if (_cachedInstantTimeDomainMetrics != null)
+            return _cachedInstantTimeDomainMetrics;
+
+        _cachedInstantTimeDomainMetrics = _instantWindow.newTimeDomainMetrics();
+
+        return _cachedInstantTimeDomainMetrics;
+    }
+
+    /** Returns the total geometric metrics. */
+    public GeometricMetrics getGeometricMetrics() {
+
+        if (_cachedGeometricMetrics != null)
+            return _cachedGeometricMetrics;
+
+        _cachedGeometricMetrics = _totalWindow.newGeometricMetrics();
+
+        return _cachedGeometricMetrics;
+    }
+
+    /** Returns the geometric metrics in the last time defined in TIME_WINDOW. */
+    public GeometricMetrics getInstantGeometricMetrics() {
+
+        if (_cachedInstantGeometricMetrics != null)
+            return _cachedInstantGeometricMetrics;
+
+        _cachedInstantGeometricMetrics = _instantWindow.newGeometricMetrics();
+
+        return _cachedInstantGeometricMetrics;
+    }
+
+    /** Returns the total Poincaré SD1 in milli seconds. */
+    public double getSD1() {
+
+        if (_cachedSD1 >= 0)
+            return _cachedSD1;
+
+        _cachedSD1 = _totalWindow.getSD1();
+
+        return _cachedSD1;
+    }
+
+    /** Returns the Poincaré SD1 in the last time defined in TIME_WINDOW. */
+    public double getInstantSD1() {
+
+        if (_cachedInstantSD1 >= 0)
+            return _cachedInstantSD1;
+
+        _cachedInstantSD1 = _instantWindow.getSD1();
+
+        return _cachedInstantSD1;
+    }
+
+    /** Returns the total Poincaré SD2 in milli seconds. */
+    public double getSD2() {
+
+        if (_cachedSD2 >= 0)
+            return _cachedSD2;
+
+        _cachedSD2 = _totalWindow.getSD2();
+
+        return _cachedSD2;
+    }
+
+    /** Returns the Poincaré SD2 in the last time defined in TIME_WINDOW. */
+    public double getInstantSD2() {
+
+        if (_cachedInstantSD2 >= 0)
+            return _cachedInstantSD2;
+
+        _cachedInstantSD2 = _instantWindow.getSD2();
+
+        return _cachedInstantSD2;
+    }
+
+    /** Returns the total SD1/SD2 ratio. Zero if SD2 is zero. */
+    public double getSD1SD2Ratio() {
+
+        double sd2 = getSD2();
+        return sd2 > 0 ? getSD1() / sd2 : 0;
+    }
+
+    /** Returns the SD1/SD2 ratio in the last time defined in TIME_WINDOW. Zero if SD2 is zero. */
+    public double getInstantSD1SD2Ratio() {
+
+        double sd2 = getInstantSD2();
+        return sd2 > 0 ? getInstantSD1() / sd2 : 0;
+    }
+
+    /** Returns the total area of the Poincaré ellipse in squared milli seconds. */
+    public double getPoincareArea() {
+
+        return Math.PI * getSD1() * getSD2();
+    }
+
+    /** Returns the area of the Poincaré ellipse in the last time defined in TIME_WINDOW. */
+    public double getInstantPoincareArea() {
+
+        return Math.PI * getInstantSD1() * getInstantSD2();
+    }
+
+    /** Returns the DFA short term scaling exponent alpha1 of the last two minutes.
+     *  Zero until two boxes of 16 beats are measured. */
+    public double getAlpha1() {
+
+        return _dfa.getAlpha1();
+    }
+
+    /** Returns the sample entropy of the last five minutes with templates of two intervals and
+     *  a tolerance of 0.2 standard deviations. -1 if there are no matching templates. */
+    public double getSampleEntropy() {
+
+        return _sampleEntropy.getSampleEntropy();
+    }
+
     /** Returns the total RMSSD. */
     private double getRMSSD() {
 
@@ -394,42 +1193,53 @@ public class RrIntervalList {
     /** Returns the RMSSD for the last specified milli seconds. */
     private double getRMSSD(long millis) {
 
-        double result = 0;
-        if (_list.size() >= 2) {
+        RrWindow window = getWindow(millis);
+        if (window != null)
+            return window.getRMSSD();
 
-            int sum = 0;
-            int count = 0;
-            int temp = 0;
-            for (int i = _list.size() - 1; i >= 1; i--) {
+        return getRMSSD(getPairWindowBegin(millis), _size);
+    }
 
-                int rr1 = _list.get(i).getRRInterval();
-                int rr = _list.get(i - 1).getRRInterval();
-                temp += Math.pow(rr1 - rr, 2);
-                sum += rr + rr1;
-                count += 2;
+    /** Returns the RMSSD of the pairs (i - 1, i) for the positions i in [from, to). */
+    private double getRMSSD(int from, int to) {
 
-                if (millis > 0 && sum >= millis) break;
-            }
-            if (count > 0) {
+        double result = 0;
+        int count = 2 * (to - from);
+        if (count > 0) {
 
-                result = Math.sqrt(temp / count);
-            }
+            result = Math.sqrt((_squaredDiffPrefix[to] - _squaredDiffPrefix[from]) / count);
         }
         return result;
     }
 
-    /** Returns the coherence score for the last time defined in TIME_WINDOW. */
+    /** Returns the instant coherence score of the coherence mode: the BFS score for the last time
+     *  defined in TIME_WINDOW or the spectral score of the last 64 seconds. */
     public double getInstantCoherence() {
 
         if (_cachedInstantCoherence >= 0)
             return _cachedInstantCoherence;
 
-        _cachedInstantCoherence = getCoherence(TIME_WINDOW);
+        _cachedInstantCoherence = getModeCoherence();
 
         return _cachedInstantCoherence;
     }
 
-    /** Returns the total coherence score. */
+    /** Returns the instant coherence score of the coherence mode without caching. */
+    private double getModeCoherence() {
+
+        if (_spectralCoherence != null)
+            return _spectralCoherence.getCoherence();
+
+        return _instantWindow.getCoherence();
+    }
+
+    /** Returns the coherence calculation mode. COHERENCE_BFS or COHERENCE_SPECTRAL. */
+    public int getCoherenceMode() {
+
+        return _coherenceMode;
+    }
+
+    /** Returns the total BFS coherence score. */
     public double getCoherence() {
 
         if (_cachedCoherence >= 0)
@@ -446,34 +1256,77 @@ public class RrIntervalList {
      */
     private double getCoherence(long millis) {
 
-        double result = 0;
-        int bfs = 0;
-        int sum = 0;
-        int count = 0;
-        for (int i = _list.size() - 1; i >= 0; i--) {
+        RrWindow window = getWindow(millis);
+        if (window != null)
+            return window.getCoherence();
 
-            RrInterval rrInterval = _list.get(i);
-            if (rrInterval.getBFS()) {
+        return getCoherence(getWindowBegin(millis), _size);
+    }
 
-                bfs++;
-            }
-            sum += rrInterval.getRRInterval();
-            count++;
+    /** Returns the coherence score of the positions [from, to). */
+    private double getCoherence(int from, int to) {
 
-            if (millis > 0 && sum >= millis) break;
-        }
+        double result = 0;
+        int count = to - from;
         if (count > 0) {
 
-            result = (100 * bfs) / count;
+            result = (100 * (_bfsPrefix[to] - _bfsPrefix[from])) / count;
         }
         return result;
     }
 
+    /**
+     * Calculates the metrics of the R-R intervals between two timestamps. Begin should be smaller than end.
+     * @param begin Timestamp of the begin of the range
+     * @param end Timestamp of the end of the range
+     * @return Metrics of the intervals with a timestamp bigger than begin and smaller than end
+     */
+    public RangeMetrics getMetrics(long begin, long end) {
+
+        int from = search(begin, true);
+        int to = search(end, false);
+        if (to < from)
+            to = from;
+
+        double averageRR = getAverageRR(from, to);
+        double heartRate = averageRR > 0 ? 60000 / averageRR : 0;
+        double rmssd = getRMSSD(from + 1, to);
+        double hrv = rmssd > 0 ? Math.log(rmssd) * 20 : 0;
+        return new RangeMetrics(begin, end, to - from, heartRate, rmssd, hrv, getCoherence(from, to));
+    }
+
+    /** Returns the frequency domain metrics of the R-R intervals in the last two minutes.
+     *  They are updated every few seconds and they are empty until a minute is measured. */
+    public FrequencyMetrics getFrequencyMetrics() {
+
+        if (_frequencyMetrics == null) {
+
+            if (_periodogram.getSize() == 0)
+                _frequencyMetrics = FrequencyMetrics.EMPTY;
+            else
+                _frequencyMetrics = new FrequencyMetrics(
+                        _periodogram.getPower(FrequencyMetrics.VLF_MIN, FrequencyMetrics.LF_MIN),
+                        _periodogram.getPower(FrequencyMetrics.LF_MIN, FrequencyMetrics.HF_MIN),
+                        _periodogram.getPower(FrequencyMetrics.HF_MIN, FrequencyMetrics.HF_MAX),
+                        _periodogram.getPeakFrequency(FrequencyMetrics.LF_MIN, FrequencyMetrics.HF_MAX));
+        }
+        return _frequencyMetrics;
+    }
+
+    /** Returns the spectrogram of the last 3 minutes. A new column is added every 2 seconds
+     *  once 32 seconds are measured. */
+    public SpectrogramFrame getSpectrogram() {
+
+        if (_spectrogramFrame == null)
+            _spectrogramFrame = _spectrogram.newFrame();
+        return _spectrogramFrame;
+    }
+
     /** Returns the last R-R interval. */
     public RrInterval getLast() {
 
-        if (!_list.isEmpty())
-            return get(_list.size() - 1);
+        if (_size > 0)
+            return get(_size - 1);
         else
             return null;
     }
@@ -487,44 +1340,59 @@ public class RrIntervalList {
     /** Returns the current coherence zone. */
     public CoherenceZone getCoherenceZone() {
 
-        return _coherenceZone;
+        return _zoneTracker.getZone();
     }
 
-    /** Updates the coherence zone.
-     * To change to a new coherence zone at least 3 values should be in the new one.
-     * This prevents too much fluctuation between zones leading to confusion. */
-    private void updateCoherenceZone() {
+    /** Returns the milli seconds of R-R intervals spent in a coherence zone. */
+    public long getZoneTime(int zoneIndex) {
 
-        processNextCoherenceZone();
+        return _zoneTracker.getTime(zoneIndex);
+    }
 
-        if (_coherenceZone == null ||
-                (_coherenceZone.getIndex() != _nextCoherenceZone.getIndex() && _nextCoherenceZone.getHits() >= ZONE_HITS)) {
+    /** Returns the longest continuous milli seconds of R-R intervals spent in a coherence zone. */
+    public long getZoneLongestStreak(int zoneIndex) {
 
-            CoherenceZone oldCoherenceZone = _coherenceZone;
-            _coherenceZone = _nextCoherenceZone;
-            _coherenceZone.resetHits();
-            _nextCoherenceZone = null;
+        return _zoneTracker.getLongestStreak(zoneIndex);
+    }
 
-            if (_listener != null)
-                _listener.onCoherenceZoneChanged(oldCoherenceZone, _coherenceZone);
-        }
+    /** Returns the milli seconds of R-R intervals since the current coherence zone was entered. */
+    public long getZoneStreak() {
+
+        return _zoneTracker.getStreak();
     }
 
-    /** Selects the new coherence zone candidate. */
-    private void processNextCoherenceZone() {
+    /** Returns the number of coherence zone changes. */
+    public int getZoneTransitionCount() {
 
-        double coherence = getInstantCoherence();
-        CoherenceZone coherenceZone = CoherenceZone.get((int) coherence, _coherenceZone);
+        return _zoneTracker.getTransitionCount();
+    }
 
-        if (_nextCoherenceZone == null || _nextCoherenceZone.getIndex() != coherenceZone.getIndex()) {
+    /** Returns the timestamp of the R-R interval that changed the coherence zone. */
+    public long getZoneTransitionTimestamp(int position) {
 
-            _nextCoherenceZone = coherenceZone;
-            _nextCoherenceZone.resetHits();
-        }
-        else {
+        return _zoneTracker.getTransitionTimestamp(position);
+    }
 
-            _nextCoherenceZone.incrementHits();
-        }
+    /** Returns the index of the coherence zone left in a change or -1 if there wasn't one. */
+    public int getZoneTransitionFrom(int position) {
+
+        return _zoneTracker.getTransitionFrom(position);
+    }
+
+    /** Returns the index of the coherence zone entered in a change. */
+    public int getZoneTransitionTo(int position) {
+
+        return _zoneTracker.getTransitionTo(position);
+    }
+
+    /** Updates the coherence zone.
+     * To change to a new coherence zone at least 3 values should be in the new one.
+     * This prevents too much fluctuation between zones leading to confusion. */
+    private void updateCoherenceZone(long timestamp, int rrInterval) {
+
+        CoherenceZone oldCoherenceZone = _zoneTracker.getZone();
+        if (_zoneTracker.update((int) getModeCoherence(), timestamp, rrInterval) && _listener != null)
+            _listener.onCoherenceZoneChanged(oldCoherenceZone, _zoneTracker.getZone());
     }
 
     /** Sets the R-R interval listener to be notified of coherence zone changes. */
@@ -0,0 +1,115 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over the R-R intervals of a RrIntervalList that answers minimum and maximum
+ * queries on any range of positions in O(log n). Intervals are only appended.
+ */
+class RrRangeIndex {
+
+    /** Initial number of leaves. Must be a power of two. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Number of leaves. Node i has children 2i and 2i + 1 and leaves start at _capacity. */
+    private int _capacity = INITIAL_CAPACITY;
+    private int[] _min = new int[2 * INITIAL_CAPACITY];
+    private int[] _max = new int[2 * INITIAL_CAPACITY];
+    private int _size = 0;
+
+    /** Package constructor. */
+    RrRangeIndex() {
+
+        clear();
+    }
+
+    /** Removes all the intervals. */
+    void clear() {
+
+        Arrays.fill(_min, Integer.MAX_VALUE);
+        Arrays.fill(_max, Integer.MIN_VALUE);
+        _size = 0;
+    }
+
+    /** Appends a R-R interval. */
+    void add(int rrInterval) {
+
+        if (_size == _capacity)
+            grow();
+
+        int node = _capacity + _size++;
+        _min[node] = rrInterval;
+        _max[node] = rrInterval;
+        for (node >>= 1; node >= 1; node >>= 1) {
+
+            _min[node] = Math.min(_min[2 * node], _min[2 * node + 1]);
+            _max[node] = Math.max(_max[2 * node], _max[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Returns the minimum and maximum R-R intervals in the positions [from, to).
+     * @param result Array in which first position it's stored the min and in second position the max.
+     *               Integer.MAX_VALUE and Integer.MIN_VALUE if the range is empty
+     */
+    void getMinMax(int from, int to, int[] result) {
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int lo = from + _capacity, hi = to + _capacity; lo < hi; lo >>= 1, hi >>= 1) {
+
+            if ((lo & 1) == 1) {
+
+                min = Math.min(min, _min[lo]);
+                max = Math.max(max, _max[lo]);
+                lo++;
+            }
+            if ((hi & 1) == 1) {
+
+                hi--;
+                min = Math.min(min, _min[hi]);
+                max = Math.max(max, _max[hi]);
+            }
+        }
+        result[0] = min;
+        result[1] = max;
+    }
+
+    /** Doubles the number of leaves and rebuilds the inner nodes. */
+    private void grow() {
+
+        int capacity = _capacity << 1;
+        int[] min = new int[2 * capacity];
+        int[] max = new int[2 * capacity];
+        Arrays.fill(min, Integer.MAX_VALUE);
+        Arrays.fill(max, Integer.MIN_VALUE);
+        System.arraycopy(_min, _capacity, min, capacity, _size);
+        System.arraycopy(_max, _capacity, max, capacity, _size);
+        for (int node = capacity - 1; node >= 1; node--) {
+
+            min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+            max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+        }
+        _capacity = capacity;
+        _min = min;
+        _max = max;
+    }
+}
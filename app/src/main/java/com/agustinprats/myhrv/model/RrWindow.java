@@ -0,0 +1,417 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Sliding window over the newest R-R intervals of a RrIntervalList.
+ *
+ * The window holds the fewest newest intervals whose sum reaches the window length, the same
+ * intervals found by walking backwards through the list. Running sums are updated when intervals
+ * enter and leave the window so heart rate, hrv and coherence are read in constant time.
+ * A window length of zero or less never expires intervals and covers the whole list.
+ * The time domain, geometric and Poincaré statistics are only kept when enabled with setStatistics().
+ */
+public class RrWindow {
+
+    // Optional statistics kept by a window. Flags that can be combined
+    public static final int STATS_NONE = 0;
+    public static final int STATS_TIME_DOMAIN = 1;
+    public static final int STATS_GEOMETRIC = 2;
+    public static final int STATS_POINCARE = 4;
+
+    /** Window length in milli seconds. */
+    private final long _length;
+
+    /** STATS_ flags of the optional statistics kept. */
+    private int _statistics = STATS_NONE;
+
+    // Intervals in the window: positions [_begin, _end)
+    private int _begin = 0;
+    private int _end = 0;
+    private long _sum = 0;
+    private int _bfsCount = 0;
+
+    // Successive differences in the window: pairs (i - 1, i) for positions i in [_pairBegin, _end)
+    private int _pairBegin = 1;
+    private long _pairSum = 0;
+    private long _squaredDiffSum = 0;
+
+    // Poincaré sums over the same pairs, x being the older interval and y the newer one
+    private long _sumX = 0;
+    private long _sumY = 0;
+    private long _sumXX = 0;
+    private long _sumYY = 0;
+    private long _sumXY = 0;
+
+    // Time domain statistics of the intervals and of the successive differences
+    private RunningStats _rrStats = new RunningStats();
+    private RunningStats _diffStats = new RunningStats();
+    private OrderStatistics _orderStats = new OrderStatistics();
+    private RrHistogram _histogram = new RrHistogram();
+    private int _nn20Count = 0;
+    private int _nn50Count = 0;
+
+    // Minimum and maximum R-R intervals in the window
+    private MonotonicDeque _minDeque = new MonotonicDeque(false);
+    private MonotonicDeque _maxDeque = new MonotonicDeque(true);
+
+    /**
+     * Public constructor
+     * @param length Window length in milli seconds. Zero or less to cover the whole list
+     */
+    public RrWindow(long length) {
+
+        _length = length;
+    }
+
+    /** Returns the window length in milli seconds. */
+    public long getLength() {
+
+        return _length;
+    }
+
+    /** Returns the STATS_ flags of the optional statistics kept. */
+    public int getStatistics() {
+
+        return _statistics;
+    }
+
+    /**
+     * Sets the optional statistics kept. The ones enabled are rebuilt from the intervals in the window
+     * and the ones disabled are emptied.
+     * @param list List that stores the intervals
+     * @param statistics STATS_ flags
+     */
+    void setStatistics(RrIntervalList list, int statistics) {
+
+        int enabled = statistics & ~_statistics;
+        clearStatistics(_statistics & ~statistics);
+        _statistics = statistics;
+        if (enabled == STATS_NONE)
+            return;
+
+        for (int i = _begin; i < _end; i++)
+            addInterval(list.getRRInterval(i), 1, enabled);
+        for (int i = _pairBegin; i < _end; i++)
+            addPair(list.getRRInterval(i - 1), list.getRRInterval(i), 1, enabled);
+    }
+
+    /** Empties the window. */
+    void clear() {
+
+        _begin = 0;
+        _end = 0;
+        _sum = 0;
+        _bfsCount = 0;
+        _pairBegin = 1;
+        _pairSum = 0;
+        _squaredDiffSum = 0;
+        clearStatistics(_statistics);
+        _minDeque.clear();
+        _maxDeque.clear();
+    }
+
+    /** Empties the optional statistics in the specified STATS_ flags. */
+    private void clearStatistics(int statistics) {
+
+        if ((statistics & STATS_TIME_DOMAIN) != 0) {
+
+            _rrStats.clear();
+            _diffStats.clear();
+            _orderStats.clear();
+            _nn20Count = 0;
+            _nn50Count = 0;
+        }
+        if ((statistics & STATS_GEOMETRIC) != 0)
+            _histogram.clear();
+        if ((statistics & STATS_POINCARE) != 0) {
+
+            _sumX = 0;
+            _sumY = 0;
+            _sumXX = 0;
+            _sumYY = 0;
+            _sumXY = 0;
+        }
+    }
+
+    /**
+     * Charges the last interval stored in the list and expires the ones that left the window.
+     * The values of the new interval are calculated once by the list and shared by all its windows.
+     * @param list List that stores the interval
+     * @param rrInterval The new R-R interval
+     * @param diff Difference with the previous interval. Ignored for the first one
+     * @param bfs BFS value of the new interval
+     */
+    void onAdded(RrIntervalList list, int rrInterval, long diff, boolean bfs) {
+
+        int position = _end++;
+
+        _sum += rrInterval;
+        if (bfs)
+            _bfsCount++;
+        addInterval(rrInterval, 1, _statistics);
+        _minDeque.push(position, rrInterval);
+        _maxDeque.push(position, rrInterval);
+
+        if (position >= 1) {
+
+            int prevRrInterval = (int) (rrInterval - diff);
+            _pairSum += rrInterval + prevRrInterval;
+            _squaredDiffSum += diff * diff;
+            addPair(prevRrInterval, rrInterval, 1, _statistics);
+        }
+
+        if (_length > 0) {
+
+            // Expire intervals while the rest still cover the window
+            while (_sum - list.getRRInterval(_begin) >= _length) {
+
+                if (list.getBFS(_begin))
+                    _bfsCount--;
+                _sum -= list.getRRInterval(_begin);
+                addInterval(list.getRRInterval(_begin), -1, _statistics);
+                _begin++;
+            }
+            _minDeque.expire(_begin);
+            _maxDeque.expire(_begin);
+
+            while (_pairBegin < _end) {
+
+                int rr1 = list.getRRInterval(_pairBegin);
+                int rr = list.getRRInterval(_pairBegin - 1);
+                if (_pairSum - (rr1 + rr) < _length) break;
+
+                long expiredDiff = rr1 - rr;
+                _pairSum -= rr1 + rr;
+                _squaredDiffSum -= expiredDiff * expiredDiff;
+                addPair(rr, rr1, -1, _statistics);
+                _pairBegin++;
+            }
+        }
+    }
+
+    /** Adds (sign 1) or removes (sign -1) an interval from the optional statistics in the specified STATS_ flags. */
+    private void addInterval(int rrInterval, int sign, int statistics) {
+
+        if ((statistics & STATS_TIME_DOMAIN) != 0) {
+
+            if (sign > 0) {
+
+                _rrStats.add(rrInterval);
+                _orderStats.add(rrInterval);
+            }
+            else {
+
+                _rrStats.remove(rrInterval);
+                _orderStats.remove(rrInterval);
+            }
+        }
+        if ((statistics & STATS_GEOMETRIC) != 0) {
+
+            if (sign > 0)
+                _histogram.add(rrInterval);
+            else
+                _histogram.remove(rrInterval);
+        }
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) a pair of successive intervals from the optional statistics
+     * in the specified STATS_ flags. x is the older interval and y the newer one.
+     */
+    private void addPair(long x, long y, int sign, int statistics) {
+
+        if ((statistics & STATS_TIME_DOMAIN) != 0) {
+
+            long diff = y - x;
+            if (sign > 0)
+                _diffStats.add(diff);
+            else
+                _diffStats.remove(diff);
+            if (Math.abs(diff) > 20)
+                _nn20Count += sign;
+            if (Math.abs(diff) > 50)
+                _nn50Count += sign;
+        }
+        if ((statistics & STATS_POINCARE) != 0) {
+
+            _sumX += sign * x;
+            _sumY += sign * y;
+            _sumXX += sign * x * x;
+            _sumYY += sign * y * y;
+            _sumXY += sign * x * y;
+        }
+    }
+
+    /** Returns the position in the list of the oldest interval in the window. */
+    public int getBegin() {
+
+        return _begin;
+    }
+
+    /** Returns the position in the list after the newest interval in the window. */
+    public int getEnd() {
+
+        return _end;
+    }
+
+    /** Returns the number of intervals in the window. */
+    public int getCount() {
+
+        return _end - _begin;
+    }
+
+    /** Returns the sum of the intervals in the window in milli seconds. */
+    public long getSum() {
+
+        return _sum;
+    }
+
+    /** Returns the minimum R-R interval or -1 if the window is empty. */
+    public int getMinRR() {
+
+        return _minDeque.isEmpty() ? -1 : _minDeque.peek();
+    }
+
+    /** Returns the maximum R-R interval or -1 if the window is empty. */
+    public int getMaxRR() {
+
+        return _maxDeque.isEmpty() ? -1 : _maxDeque.peek();
+    }
+
+    /** Returns the minimum heart rate or -1 if the window is empty. */
+    public double getMinHeartRate() {
+
+        return _maxDeque.isEmpty() ? -1 : RrInterval.getHeartRate(_maxDeque.peek());
+    }
+
+    /** Returns the maximum heart rate or -1 if the window is empty. */
+    public double getMaxHeartRate() {
+
+        return _minDeque.isEmpty() ? -1 : RrInterval.getHeartRate(_minDeque.peek());
+    }
+
+    /** Returns the average R-R interval truncated to milli seconds. */
+    public double getAverageRR() {
+
+        int count = getCount();
+        if (count > 0) {
+
+            return _sum / count;
+        }
+        return 0;
+    }
+
+    /** Returns the average heart rate. */
+    public double getHeartRate() {
+
+        double averageRR = getAverageRR();
+        if (averageRR > 0) {
+
+            return 60000 / averageRR;
+        }
+        return 0;
+    }
+
+    /** Returns the RMSSD. */
+    public double getRMSSD() {
+
+        int count = 2 * (_end - _pairBegin);
+        if (count > 0) {
+
+            return Math.sqrt(_squaredDiffSum / count);
+        }
+        return 0;
+    }
+
+    /** Returns the hrv score calculated from the RMSSD. */
+    public double getHRV() {
+
+        double rmssd = getRMSSD();
+        if (rmssd <= 0) {
+
+            return 0;
+        }
+        return Math.log(rmssd) * 20;
+    }
+
+    /** Returns the Poincaré SD1: the standard deviation perpendicular to the identity line. Zero if STATS_POINCARE isn't kept. */
+    public double getSD1() {
+
+        long count = _end - _pairBegin;
+        if (count > 1 && (_statistics & STATS_POINCARE) != 0) {
+
+            // Exact count squared times the variance of y - x
+            long varX = count * _sumXX - _sumX * _sumX;
+            long varY = count * _sumYY - _sumY * _sumY;
+            long cov = count * _sumXY - _sumX * _sumY;
+            return Math.sqrt(Math.max(0, varX + varY - 2 * cov) / (2.0 * count * count));
+        }
+        return 0;
+    }
+
+    /** Returns the Poincaré SD2: the standard deviation along the identity line. Zero if STATS_POINCARE isn't kept. */
+    public double getSD2() {
+
+        long count = _end - _pairBegin;
+        if (count > 1 && (_statistics & STATS_POINCARE) != 0) {
+
+            // Exact count squared times the variance of y + x
+            long varX = count * _sumXX - _sumX * _sumX;
+            long varY = count * _sumYY - _sumY * _sumY;
+            long cov = count * _sumXY - _sumX * _sumY;
+            return Math.sqrt(Math.max(0, varX + varY + 2 * cov) / (2.0 * count * count));
+        }
+        return 0;
+    }
+
+    /** Returns the time domain metrics of the window. Empty if STATS_TIME_DOMAIN isn't kept. */
+    public TimeDomainMetrics newTimeDomainMetrics() {
+
+        if (getCount() == 0 || (_statistics & STATS_TIME_DOMAIN) == 0)
+            return TimeDomainMetrics.EMPTY;
+
+        int pairs = _end - _pairBegin;
+        double rmssd = pairs > 0 ? Math.sqrt((double) _squaredDiffSum / pairs) : 0;
+        double pnn20 = pairs > 0 ? 100.0 * _nn20Count / pairs : 0;
+        double pnn50 = pairs > 0 ? 100.0 * _nn50Count / pairs : 0;
+        return new TimeDomainMetrics(_rrStats.getMean(), _orderStats.getMedian(), _rrStats.getStandardDeviation(),
+                _diffStats.getStandardDeviation(), rmssd, pnn20, pnn50);
+    }
+
+    /** Returns the geometric metrics of the histogram of the window. Empty if STATS_GEOMETRIC isn't kept. */
+    public GeometricMetrics newGeometricMetrics() {
+
+        if (getCount() == 0 || (_statistics & STATS_GEOMETRIC) == 0)
+            return GeometricMetrics.EMPTY;
+
+        return _histogram.newMetrics(getMinRR(), getMaxRR());
+    }
+
+    /** Returns the coherence score. */
+    public double getCoherence() {
+
+        int count = getCount();
+        if (count > 0) {
+
+            return (100 * _bfsCount) / count;
+        }
+        return 0;
+    }
+}
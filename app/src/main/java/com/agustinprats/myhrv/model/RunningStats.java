@@ -0,0 +1,91 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Mean and variance of a set of values updated in constant time when values are added or removed.
+ * Uses Welford's algorithm, which keeps the sum of squared deviations from the running mean instead
+ * of the sum of squares, so it doesn't lose precision when the variance is small compared to the mean.
+ */
+class RunningStats {
+
+    private int _count = 0;
+    private double _mean = 0;
+
+    /** Sum of the squared deviations from the mean. */
+    private double _m2 = 0;
+
+    /** Removes all the values. */
+    void clear() {
+
+        _count = 0;
+        _mean = 0;
+        _m2 = 0;
+    }
+
+    /** Adds a value. */
+    void add(double value) {
+
+        _count++;
+        double delta = value - _mean;
+        _mean += delta / _count;
+        _m2 += delta * (value - _mean);
+    }
+
+    /** Removes a value previously added. */
+    void remove(double value) {
+
+        if (_count <= 1) {
+
+            clear();
+            return;
+        }
+
+        _count--;
+        double delta = value - _mean;
+        _mean -= delta / _count;
+        _m2 -= delta * (value - _mean);
+        if (_m2 < 0)
+            _m2 = 0;
+    }
+
+    /** Returns the number of values. */
+    int getCount() {
+
+        return _count;
+    }
+
+    /** Returns the mean or zero if empty. */
+    double getMean() {
+
+        return _mean;
+    }
+
+    /** Returns the sample variance or zero if there are less than two values. */
+    double getVariance() {
+
+        return _count > 1 ? _m2 / (_count - 1) : 0;
+    }
+
+    /** Returns the sample standard deviation or zero if there are less than two values. */
+    double getStandardDeviation() {
+
+        return Math.sqrt(getVariance());
+    }
+}
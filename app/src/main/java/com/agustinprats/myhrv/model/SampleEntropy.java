@@ -0,0 +1,261 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Sample entropy of the R-R intervals in a sliding window, with templates of M intervals and
+ * tolerance R_FACTOR times the standard deviation of the window.
+ *
+ * Template i is the pair (u[i], u[i + 1]) and it's counted once u[i + 2] is known, so the same
+ * templates are compared with M and M + 1 intervals. B counts the pairs of templates closer than
+ * the tolerance and A the pairs that are still closer after adding the next interval.
+ * Templates are indexed in a grid of cells not smaller than the tolerance, hashed into buckets of
+ * doubly linked lists, so the templates matching a new or expiring one are found in its 3x3 cells
+ * and both counts are updated incrementally. Intervals are whole milli seconds, so two of them are
+ * closer than the tolerance if they are closer than the tolerance rounded down. The index is rebuilt
+ * only when the rounded tolerance changes, and the counts are always those of the exact tolerance.
+ */
+class SampleEntropy {
+
+    /** Template length. */
+    static final int M = 2;
+
+    /** Tolerance relative to the standard deviation. */
+    static final double R_FACTOR = 0.2;
+
+    /** Number of hash buckets. A power of two. */
+    private static final int BUCKETS = 1024;
+
+    /** End of a linked list. */
+    private static final int NONE = -1;
+
+    // Intervals in the window: absolute positions [_begin, _end) at position % capacity
+    private final int[] _points;
+    private long _begin = 0;
+    private long _end = 0;
+    private long _sum = 0;
+    private long _squaredSum = 0;
+
+    // Grid index. Templates are stored in the slot of their first interval
+    private final int[] _heads = new int[BUCKETS];
+    private final int[] _next;
+    private final int[] _prev;
+    private final long[] _cellX;
+    private final long[] _cellY;
+
+    /** Tolerance used by the index and the counts. */
+    private double _r = 0;
+
+    /** Cell size of the index. */
+    private double _cellSize = 1;
+
+    // Matching template pairs with M and M + 1 intervals
+    private long _countB = 0;
+    private long _countA = 0;
+
+    /**
+     * Package constructor
+     * @param windowLength Milli seconds of R-R intervals analyzed
+     */
+    SampleEntropy(long windowLength) {
+
+        // The most intervals a window can hold are the shortest valid ones, plus the new one
+        // that is stored before the oldest ones expire. The artifact corrector doesn't produce shorter ones
+        int capacity = (int) (windowLength * RrInterval.MAX_HR / 60000) + 3;
+        _points = new int[capacity];
+        _next = new int[capacity];
+        _prev = new int[capacity];
+        _cellX = new long[capacity];
+        _cellY = new long[capacity];
+        clear();
+    }
+
+    /** Removes all the intervals. */
+    void clear() {
+
+        _begin = 0;
+        _end = 0;
+        _sum = 0;
+        _squaredSum = 0;
+        _r = 0;
+        _cellSize = 1;
+        clearIndex();
+    }
+
+    /** Empties the grid index and the counts. */
+    private void clearIndex() {
+
+        for (int i = 0; i < BUCKETS; i++)
+            _heads[i] = NONE;
+        _countB = 0;
+        _countA = 0;
+    }
+
+    /**
+     * Adds an interval and expires the ones that left the window.
+     * @param rrInterval R-R interval in milli seconds
+     * @param windowBegin Number of intervals added before the oldest one in the window
+     */
+    void add(int rrInterval, long windowBegin) {
+
+        if (_end - _begin == _points.length)
+            throw new IllegalStateException("More intervals than the window can hold");
+
+        _points[slot(_end)] = rrInterval;
+        _end++;
+        _sum += rrInterval;
+        _squaredSum += (long) rrInterval * rrInterval;
+
+        // The new interval completes the template M positions before it
+        long template = _end - 1 - M;
+        if (template >= _begin)
+            insert(template);
+
+        while (_begin < windowBegin) {
+
+            if (_begin < _end - M)
+                remove(_begin);
+            int rr = _points[slot(_begin)];
+            _sum -= rr;
+            _squaredSum -= (long) rr * rr;
+            _begin++;
+        }
+
+        double r = Math.floor(R_FACTOR * getStandardDeviation());
+        if (r != _r)
+            rebuild(r);
+    }
+
+    /**
+     * Returns the sample entropy or -1 if there are no matching templates.
+     * It's exact for a tolerance of R_FACTOR times the current standard deviation of the window,
+     * as the counts are rebuilt whenever the tolerance crosses a whole milli second.
+     */
+    double getSampleEntropy() {
+
+        if (_countA == 0 || _countB == 0)
+            return -1;
+        return Math.log((double) _countB / _countA);
+    }
+
+    /** Returns the tolerance in milli seconds, rounded down as the intervals are compared with it. */
+    double getTolerance() {
+
+        return _r;
+    }
+
+    /** Returns the sample standard deviation of the intervals in the window. */
+    private double getStandardDeviation() {
+
+        long count = _end - _begin;
+        if (count < 2)
+            return 0;
+        double variance = (count * _squaredSum - _sum * _sum) / ((double) count * (count - 1));
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    /** Indexes every template in the window again with a new tolerance. */
+    private void rebuild(double r) {
+
+        _r = r;
+        _cellSize = Math.max(1, r);
+        clearIndex();
+        for (long template = _begin; template < _end - M; template++)
+            insert(template);
+    }
+
+    /** Counts the matches of a template with the indexed ones and adds it to the index. */
+    private void insert(long template) {
+
+        int slot = slot(template);
+        countMatches(template, 1);
+
+        long cellX = cell(_points[slot]);
+        long cellY = cell(_points[slot(template + 1)]);
+        int bucket = bucket(cellX, cellY);
+        _cellX[slot] = cellX;
+        _cellY[slot] = cellY;
+        _prev[slot] = NONE;
+        _next[slot] = _heads[bucket];
+        if (_heads[bucket] != NONE)
+            _prev[_heads[bucket]] = slot;
+        _heads[bucket] = slot;
+    }
+
+    /** Removes a template from the index and discounts its matches with the rest. */
+    private void remove(long template) {
+
+        int slot = slot(template);
+        if (_prev[slot] != NONE)
+            _next[_prev[slot]] = _next[slot];
+        else
+            _heads[bucket(_cellX[slot], _cellY[slot])] = _next[slot];
+        if (_next[slot] != NONE)
+            _prev[_next[slot]] = _prev[slot];
+
+        countMatches(template, -1);
+    }
+
+    /** Adds the sign to the counts for every indexed template matching the one specified. */
+    private void countMatches(long template, int sign) {
+
+        int x = _points[slot(template)];
+        int y = _points[slot(template + 1)];
+        int z = _points[slot(template + 2)];
+        long cellX = cell(x);
+        long cellY = cell(y);
+        for (long cx = cellX - 1; cx <= cellX + 1; cx++) {
+
+            for (long cy = cellY - 1; cy <= cellY + 1; cy++) {
+
+                for (int other = _heads[bucket(cx, cy)]; other != NONE; other = _next[other]) {
+
+                    // Different cells can share a bucket
+                    if (_cellX[other] != cx || _cellY[other] != cy)
+                        continue;
+                    if (Math.abs(_points[other] - x) > _r
+                            || Math.abs(_points[(other + 1) % _points.length] - y) > _r)
+                        continue;
+
+                    _countB += sign;
+                    if (Math.abs(_points[(other + 2) % _points.length] - z) <= _r)
+                        _countA += sign;
+                }
+            }
+        }
+    }
+
+    /** Returns the storage position of an absolute interval position. */
+    private int slot(long position) {
+
+        return (int) (position % _points.length);
+    }
+
+    /** Returns the grid cell of an interval. */
+    private long cell(int rrInterval) {
+
+        return (long) Math.floor(rrInterval / _cellSize);
+    }
+
+    /** Returns the hash bucket of a grid cell. */
+    private static int bucket(long cellX, long cellY) {
+
+        return (int) (cellX * 73856093 ^ cellY * 19349663) & (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,88 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Quality of the R-R intervals of a window. The index combines the rate of intervals dropped for
+ * being out of range, the rate of time where the wall clock outruns the measured intervals and
+ * the rate of corrected intervals. It goes from 0 to 1, and metrics calculated from a window
+ * with an index below GOOD_INDEX shouldn't be trusted.
+ */
+public class SignalQuality {
+
+    /** Min index of a window whose metrics can be trusted. */
+    public static final double GOOD_INDEX = 0.8;
+
+    /** Quality of an empty window. */
+    public static final SignalQuality EMPTY = new SignalQuality(0, 0, 0, 0);
+
+    private final double _index;
+    private final double _droppedRate;
+    private final double _gapRate;
+    private final double _artifactRate;
+
+    /**
+     * Package constructor
+     * @param droppedRate Rate of the received intervals dropped for being out of range
+     * @param gapRate Rate of the wall clock time not covered by the stored intervals
+     * @param artifactRate Rate of the stored intervals that were corrected
+     */
+    SignalQuality(double droppedRate, double gapRate, double artifactRate) {
+
+        this((1 - droppedRate) * (1 - gapRate) * (1 - artifactRate), droppedRate, gapRate, artifactRate);
+    }
+
+    private SignalQuality(double index, double droppedRate, double gapRate, double artifactRate) {
+
+        _index = index;
+        _droppedRate = droppedRate;
+        _gapRate = gapRate;
+        _artifactRate = artifactRate;
+    }
+
+    /** Returns the quality index from 0, the worst, to 1. */
+    public double getIndex() {
+
+        return _index;
+    }
+
+    /** Returns true if the metrics of the window can be trusted. */
+    public boolean isGood() {
+
+        return _index >= GOOD_INDEX;
+    }
+
+    /** Returns the rate of the received intervals dropped for being out of range. */
+    public double getDroppedRate() {
+
+        return _droppedRate;
+    }
+
+    /** Returns the rate of the wall clock time not covered by the stored intervals. */
+    public double getGapRate() {
+
+        return _gapRate;
+    }
+
+    /** Returns the rate of the stored intervals that were corrected. */
+    public double getArtifactRate() {
+
+        return _artifactRate;
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Median and median absolute deviation of the last values added, up to a fixed window size.
+ * The window is a circular array and its values are counted in an OrderStatistics, so each
+ * new value costs O(log OrderStatistics.MAX_VALUE) whatever the window size.
+ */
+class SlidingMedian {
+
+    /** Values in the window, the oldest one at _next once it's full. */
+    private final int[] _values;
+    private int _count = 0;
+    private int _next = 0;
+
+    private final OrderStatistics _statistics = new OrderStatistics();
+
+    /**
+     * Package constructor
+     * @param window Number of values kept
+     */
+    SlidingMedian(int window) {
+
+        _values = new int[window];
+    }
+
+    /** Removes all the values. */
+    void clear() {
+
+        _statistics.clear();
+        _count = 0;
+        _next = 0;
+    }
+
+    /** Adds a value replacing the oldest one if the window is full. */
+    void add(int value) {
+
+        if (_count == _values.length)
+            _statistics.remove(_values[_next]);
+        else
+            _count++;
+
+        _values[_next] = value;
+        _statistics.add(value);
+        _next = (_next + 1) % _values.length;
+    }
+
+    /** Returns the number of values in the window. */
+    int size() {
+
+        return _count;
+    }
+
+    /** Returns the median of the window. Zero if empty. */
+    double getMedian() {
+
+        return _statistics.getMedian();
+    }
+
+    /** Returns the median absolute deviation of the window. Zero if empty. */
+    double getMad() {
+
+        return _statistics.getMad();
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Coherence score calculated from the spectrum of the heart rhythm.
+ * The tachogram is resampled at 4 Hz and the Welch periodogram of the last 64 seconds is
+ * calculated every time new samples are available. The score is the percentage of the total
+ * power that lies around the highest peak in the 0.04 - 0.26 Hz range, so a heart rhythm
+ * oscillating at a single frequency scores close to 100.
+ */
+class SpectralCoherence {
+
+    /** Tachogram samples per second. */
+    static final double SAMPLE_RATE = 4;
+
+    /** Number of samples analyzed: 64 seconds. */
+    static final int WINDOW_SAMPLES = 256;
+
+    /** Number of samples of each Welch segment: 32 seconds. */
+    private static final int SEGMENT_LENGTH = 128;
+
+    /** Transform size. Segments are zero padded to get a 0.0156 Hz resolution. */
+    private static final int FFT_SIZE = 256;
+
+    // Range in Hz where the peak is searched
+    static final double PEAK_MIN = 0.04;
+    static final double PEAK_MAX = 0.26;
+
+    /** Number of frequencies on each side of the peak added to the peak power. */
+    private static final int PEAK_NEIGHBOURS = 1;
+
+    private final TachogramResampler _resampler = new TachogramResampler(SAMPLE_RATE, WINDOW_SAMPLES);
+    private final WelchPeriodogram _periodogram = new WelchPeriodogram(SAMPLE_RATE, SEGMENT_LENGTH, FFT_SIZE);
+    private final double[] _samples = new double[WINDOW_SAMPLES];
+    private double _coherence = 0;
+
+    /** Removes all the beats. */
+    void clear() {
+
+        _resampler.clear();
+        _periodogram.clear();
+        _coherence = 0;
+    }
+
+    /**
+     * Adds a beat and updates the score if new samples are available.
+     * @param time Time of the beat in seconds
+     * @param rrInterval R-R interval ending at the beat in milli seconds
+     */
+    void add(double time, int rrInterval) {
+
+        if (_resampler.add(time, rrInterval) > 0)
+            update();
+    }
+
+    /** Calculates the score from the newest samples. */
+    private void update() {
+
+        int count = _resampler.size();
+        _resampler.copyNewest(_samples, count);
+        if (!_periodogram.compute(_samples, count)) {
+
+            _coherence = 0;
+            return;
+        }
+
+        double peak = _periodogram.getPeakFrequency(PEAK_MIN, PEAK_MAX);
+        double total = _periodogram.getPower(FrequencyMetrics.VLF_MIN, FrequencyMetrics.HF_MAX);
+        double width = (PEAK_NEIGHBOURS + 0.5) * _periodogram.getResolution();
+        double peakPower = _periodogram.getPower(peak - width, peak + width);
+        _coherence = peak > 0 && total > 0 ? Math.min(100, 100 * peakPower / total) : 0;
+    }
+
+    /** Returns the coherence score from 0 to 100. Zero until 32 seconds are measured. */
+    double getCoherence() {
+
+        return _coherence;
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Streaming short-time Fourier transform of the tachogram.
+ * The tachogram is resampled at 4 Hz into a sliding buffer that holds the last 32 seconds, so
+ * consecutive frames overlap in all but the newest HOP_SAMPLES. Every 2 seconds the buffer is
+ * Hann windowed and transformed and the power of each frequency up to 0.5 Hz is stored as a
+ * new column of a circular array holding the last 3 minutes. Nothing is allocated after construction.
+ */
+class Spectrogram {
+
+    /** Tachogram samples per second. */
+    static final double SAMPLE_RATE = 4;
+
+    /** Number of samples of each frame: 32 seconds. */
+    private static final int WINDOW_SAMPLES = 128;
+
+    /** Transform size. Frames are zero padded to get a 0.0156 Hz resolution. */
+    private static final int FFT_SIZE = 256;
+
+    /** Number of new samples between columns: 2 seconds. */
+    static final int HOP_SAMPLES = 8;
+
+    /** Number of columns kept: 3 minutes. */
+    static final int COLUMNS = 90;
+
+    /** Milli seconds between columns. */
+    static final int HOP = (int) (HOP_SAMPLES * 1000 / SAMPLE_RATE);
+
+    /** Milli seconds of tachogram needed to calculate all the columns. */
+    static final int SPAN = (int) ((COLUMNS * HOP_SAMPLES + WINDOW_SAMPLES) * 1000 / SAMPLE_RATE);
+
+    /** Number of frequencies of each column, from one resolution step up to 0.5 Hz. */
+    static final int BINS = 32;
+
+    private final TachogramResampler _resampler = new TachogramResampler(SAMPLE_RATE, WINDOW_SAMPLES);
+    private final Fft _fft = new Fft(FFT_SIZE);
+    private final double[] _window = Fft.hann(WINDOW_SAMPLES);
+
+    // Work buffers
+    private final double[] _samples = new double[WINDOW_SAMPLES];
+    private final double[] _re = new double[FFT_SIZE];
+    private final double[] _im = new double[FFT_SIZE];
+
+    /** Circular array of columns. The newest one is at (_columnCount - 1) % COLUMNS. */
+    private final float[][] _columns = new float[COLUMNS][BINS];
+    private long _columnCount = 0;
+
+    /** Samples produced since the last column. */
+    private int _pendingSamples = 0;
+
+    /** Removes all the columns. */
+    void clear() {
+
+        _resampler.clear();
+        _columnCount = 0;
+        _pendingSamples = 0;
+    }
+
+    /**
+     * Adds a beat and calculates a new column if it's time to.
+     * @param time Time of the beat in seconds
+     * @param rrInterval R-R interval ending at the beat in milli seconds
+     * @return True if a new column was added
+     */
+    boolean add(double time, int rrInterval) {
+
+        _pendingSamples += _resampler.add(time, rrInterval);
+        if (_resampler.size() < WINDOW_SAMPLES || _pendingSamples < HOP_SAMPLES)
+            return false;
+
+        // The remainder is kept so columns are 2 seconds apart on average
+        _pendingSamples %= HOP_SAMPLES;
+        addColumn();
+        return true;
+    }
+
+    /** Transforms the sliding buffer into a new column. */
+    private void addColumn() {
+
+        _resampler.copyNewest(_samples, WINDOW_SAMPLES);
+        double mean = 0;
+        for (int i = 0; i < WINDOW_SAMPLES; i++)
+            mean += _samples[i];
+        mean /= WINDOW_SAMPLES;
+
+        for (int i = 0; i < FFT_SIZE; i++) {
+
+            _re[i] = i < WINDOW_SAMPLES ? (_samples[i] - mean) * _window[i] : 0;
+            _im[i] = 0;
+        }
+        _fft.transform(_re, _im);
+
+        float[] column = _columns[(int) (_columnCount++ % COLUMNS)];
+        for (int bin = 0; bin < BINS; bin++)
+            column[bin] = (float) (_re[bin + 1] * _re[bin + 1] + _im[bin + 1] * _im[bin + 1]);
+    }
+
+    /** Returns the number of columns available. At most COLUMNS. */
+    int getColumnCount() {
+
+        return (int) Math.min(_columnCount, COLUMNS);
+    }
+
+    /**
+     * Returns the power of a frequency in a column.
+     * @param column Column position, the oldest available one first
+     * @param bin Frequency position. Its frequency is getFrequency(bin)
+     */
+    float getValue(int column, int bin) {
+
+        long first = _columnCount - getColumnCount();
+        return _columns[(int) ((first + column) % COLUMNS)][bin];
+    }
+
+    /** Returns the frequency in Hz of a bin. */
+    static double getFrequency(int bin) {
+
+        return (bin + 1) * SAMPLE_RATE / FFT_SIZE;
+    }
+
+    /** Creates an immutable copy of the columns. */
+    SpectrogramFrame newFrame() {
+
+        return new SpectrogramFrame(this);
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Immutable copy of the spectrogram of the heart rhythm. Columns are spectra taken at a fixed
+ * interval, oldest first, and bins are frequencies, lowest first.
+ */
+public class SpectrogramFrame {
+
+    private final int _columnCount;
+    private final float[] _values;
+    private final float _maxValue;
+
+    /** Package constructor. Use Spectrogram.newFrame(). */
+    SpectrogramFrame(Spectrogram spectrogram) {
+
+        _columnCount = spectrogram.getColumnCount();
+        _values = new float[_columnCount * Spectrogram.BINS];
+        float max = 0;
+        for (int column = 0; column < _columnCount; column++) {
+
+            for (int bin = 0; bin < Spectrogram.BINS; bin++) {
+
+                float value = spectrogram.getValue(column, bin);
+                _values[column * Spectrogram.BINS + bin] = value;
+                if (value > max)
+                    max = value;
+            }
+        }
+        _maxValue = max;
+    }
+
+    /** Returns the number of columns available. */
+    public int getColumnCount() {
+
+        return _columnCount;
+    }
+
+    /** Returns the max number of columns of a spectrogram. */
+    public int getMaxColumnCount() {
+
+        return Spectrogram.COLUMNS;
+    }
+
+    /** Returns the number of frequencies of each column. */
+    public int getBinCount() {
+
+        return Spectrogram.BINS;
+    }
+
+    /** Returns the milli seconds between consecutive columns. */
+    public long getColumnInterval() {
+
+        return (long) (1000 * Spectrogram.HOP_SAMPLES / Spectrogram.SAMPLE_RATE);
+    }
+
+    /** Returns the frequency in Hz of a bin. */
+    public double getFrequency(int bin) {
+
+        return Spectrogram.getFrequency(bin);
+    }
+
+    /** Returns the power of a frequency in a column. */
+    public float getValue(int column, int bin) {
+
+        return _values[column * Spectrogram.BINS + bin];
+    }
+
+    /** Returns the highest power in the frame. */
+    public float getMaxValue() {
+
+        return _maxValue;
+    }
+}
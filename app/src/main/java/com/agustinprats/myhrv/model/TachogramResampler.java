@@ -0,0 +1,107 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Resamples the tachogram (each R-R interval placed at the time its beat happens) at a fixed
+ * rate with linear interpolation between consecutive beats. Samples are produced as beats
+ * arrive and the newest ones are kept in a ring buffer.
+ */
+class TachogramResampler {
+
+    private final double _rate;
+    private final double[] _samples;
+
+    /** Total number of samples produced. The newest one is at (_count - 1) % capacity. */
+    private long _count = 0;
+
+    /** Index of the next sample on the grid. Sample k is at time k / _rate. */
+    private long _nextSample = 0;
+
+    // Previous beat
+    private boolean _hasPrevious = false;
+    private double _previousTime;
+    private double _previousValue;
+
+    /**
+     * Package constructor
+     * @param rate Samples per second
+     * @param capacity Number of newest samples kept
+     */
+    TachogramResampler(double rate, int capacity) {
+
+        _rate = rate;
+        _samples = new double[capacity];
+    }
+
+    /** Removes all the samples. */
+    void clear() {
+
+        _count = 0;
+        _nextSample = 0;
+        _hasPrevious = false;
+    }
+
+    /**
+     * Adds a beat.
+     * @param time Time of the beat in seconds. Not smaller than the previous one
+     * @param value R-R interval ending at the beat
+     * @return Number of new samples
+     */
+    int add(double time, double value) {
+
+        int added = 0;
+        if (!_hasPrevious) {
+
+            _nextSample = (long) Math.ceil(time * _rate);
+        }
+        else if (time > _previousTime) {
+
+            double slope = (value - _previousValue) / (time - _previousTime);
+            for (double sampleTime = _nextSample / _rate; sampleTime <= time; sampleTime = ++_nextSample / _rate) {
+
+                _samples[(int) (_count++ % _samples.length)] = _previousValue + slope * (sampleTime - _previousTime);
+                added++;
+            }
+        }
+
+        _hasPrevious = true;
+        _previousTime = time;
+        _previousValue = value;
+        return added;
+    }
+
+    /** Returns the number of samples available. At most the capacity. */
+    int size() {
+
+        return (int) Math.min(_count, _samples.length);
+    }
+
+    /**
+     * Copies the newest samples, oldest first.
+     * @param destination Array to copy the samples to
+     * @param count Number of samples. At most size()
+     */
+    void copyNewest(double[] destination, int count) {
+
+        long first = _count - count;
+        for (int i = 0; i < count; i++)
+            destination[i] = _samples[(int) ((first + i) % _samples.length)];
+    }
+}
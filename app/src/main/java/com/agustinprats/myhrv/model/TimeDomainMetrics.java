@@ -0,0 +1,107 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Time domain hrv metrics of a window of R-R intervals. Values are in milli seconds.
+ * Successive differences are taken over the same pairs of intervals used by the hrv score.
+ */
+public class TimeDomainMetrics {
+
+    /** Metrics of an empty window. */
+    public static final TimeDomainMetrics EMPTY = new TimeDomainMetrics(0, 0, 0, 0, 0, 0, 0);
+
+    private final double _meanRR;
+    private final double _medianRR;
+    private final double _sdnn;
+    private final double _sdsd;
+    private final double _rmssd;
+    private final double _pnn20;
+    private final double _pnn50;
+
+    /**
+     * Package constructor
+     * @param meanRR Mean R-R interval
+     * @param medianRR Median R-R interval
+     * @param sdnn Standard deviation of the R-R intervals
+     * @param sdsd Standard deviation of the successive differences
+     * @param rmssd Root mean square of the successive differences
+     * @param pnn20 Percentage of successive differences bigger than 20 milli seconds
+     * @param pnn50 Percentage of successive differences bigger than 50 milli seconds
+     */
+    TimeDomainMetrics(double meanRR, double medianRR, double sdnn, double sdsd, double rmssd,
+                      double pnn20, double pnn50) {
+
+        _meanRR = meanRR;
+        _medianRR = medianRR;
+        _sdnn = sdnn;
+        _sdsd = sdsd;
+        _rmssd = rmssd;
+        _pnn20 = pnn20;
+        _pnn50 = pnn50;
+    }
+
+    /** Returns the mean R-R interval. */
+    public double getMeanRR() {
+
+        return _meanRR;
+    }
+
+    /** Returns the median R-R interval. The mean of the two middle ones if the count is even. */
+    public double getMedianRR() {
+
+        return _medianRR;
+    }
+
+    /** Returns the standard deviation of the R-R intervals. */
+    public double getSDNN() {
+
+        return _sdnn;
+    }
+
+    /** Returns the standard deviation of the successive differences. */
+    public double getSDSD() {
+
+        return _sdsd;
+    }
+
+    /** Returns the root mean square of the successive differences. */
+    public double getRMSSD() {
+
+        return _rmssd;
+    }
+
+    /** Returns the percentage of successive differences bigger than 20 milli seconds. */
+    public double getPNN20() {
+
+        return _pnn20;
+    }
+
+    /** Returns the percentage of successive differences bigger than 50 milli seconds. */
+    public double getPNN50() {
+
+        return _pnn50;
+    }
+
+    /** Returns the coefficient of variation: SDNN as a percentage of the mean R-R interval. */
+    public double getCV() {
+
+        return _meanRR > 0 ? 100 * _sdnn / _meanRR : 0;
+    }
+}
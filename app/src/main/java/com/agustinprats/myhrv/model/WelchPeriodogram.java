@@ -0,0 +1,181 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+/**
+ * Welch periodogram of evenly sampled values: the average of the periodograms of half
+ * overlapping Hann windowed segments, each one zero padded to the transform size.
+ * The window table, twiddle factors and work buffers are created once so calculating
+ * a periodogram doesn't allocate memory.
+ */
+class WelchPeriodogram {
+
+    private final double _rate;
+    private final int _segmentLength;
+    private final Fft _fft;
+    private final double[] _window;
+
+    /** Sum of the squared window values. */
+    private final double _windowPower;
+
+    // Work buffers
+    private final double[] _re;
+    private final double[] _im;
+
+    // Result: power of the frequencies i * rate / fftSize for i in [0, _size)
+    private final double[] _powers;
+    private int _size = 0;
+
+    /**
+     * Package constructor
+     * @param rate Samples per second
+     * @param segmentLength Number of samples of each segment
+     * @param fftSize Transform size. A power of two not smaller than the segment length
+     */
+    WelchPeriodogram(double rate, int segmentLength, int fftSize) {
+
+        _rate = rate;
+        _segmentLength = segmentLength;
+        _fft = new Fft(fftSize);
+        _re = new double[fftSize];
+        _im = new double[fftSize];
+        _powers = new double[fftSize / 2 + 1];
+
+        _window = Fft.hann(segmentLength);
+        double windowPower = 0;
+        for (int i = 0; i < segmentLength; i++)
+            windowPower += _window[i] * _window[i];
+        _windowPower = windowPower;
+    }
+
+    /** Returns the number of samples of each segment. */
+    int getSegmentLength() {
+
+        return _segmentLength;
+    }
+
+    /** Empties the periodogram. */
+    void clear() {
+
+        _size = 0;
+    }
+
+    /**
+     * Calculates the periodogram of the samples.
+     * Segments start every half segment from the newest samples backwards.
+     * @param samples Evenly sampled values, oldest first
+     * @param count Number of samples
+     * @return True if calculated. False if there are less samples than a segment
+     */
+    boolean compute(double[] samples, int count) {
+
+        clear();
+        int segments = count < _segmentLength ? 0 : 1 + (count - _segmentLength) / (_segmentLength / 2);
+        if (segments == 0)
+            return false;
+
+        int fftSize = _fft.getSize();
+        int size = fftSize / 2 + 1;
+        for (int k = 0; k < size; k++)
+            _powers[k] = 0;
+
+        for (int segment = 0; segment < segments; segment++) {
+
+            int begin = count - _segmentLength - segment * (_segmentLength / 2);
+
+            double mean = 0;
+            for (int i = 0; i < _segmentLength; i++)
+                mean += samples[begin + i];
+            mean /= _segmentLength;
+
+            for (int i = 0; i < fftSize; i++) {
+
+                _re[i] = i < _segmentLength ? (samples[begin + i] - mean) * _window[i] : 0;
+                _im[i] = 0;
+            }
+            _fft.transform(_re, _im);
+
+            for (int k = 0; k < size; k++)
+                _powers[k] += _re[k] * _re[k] + _im[k] * _im[k];
+        }
+
+        // One sided power scaled so all the frequencies add up to the variance
+        for (int k = 0; k < size; k++) {
+
+            double scale = (k == 0 || k == fftSize / 2) ? 1 : 2;
+            _powers[k] *= scale / (fftSize * _windowPower * segments);
+        }
+        _size = size;
+        return true;
+    }
+
+    /** Returns the number of frequencies calculated. Zero if empty. */
+    int getSize() {
+
+        return _size;
+    }
+
+    /** Returns the distance in Hz between consecutive frequencies. */
+    double getResolution() {
+
+        return _rate / _fft.getSize();
+    }
+
+    /** Returns the frequency in Hz at the specified position. */
+    double getFrequency(int position) {
+
+        return position * _rate / _fft.getSize();
+    }
+
+    /** Returns the power at the specified position. */
+    double getPower(int position) {
+
+        return _powers[position];
+    }
+
+    /** Returns the power of the frequencies in [from, to) Hz. */
+    double getPower(double from, double to) {
+
+        double result = 0;
+        for (int i = 0; i < _size; i++) {
+
+            double frequency = getFrequency(i);
+            if (frequency >= from && frequency < to)
+                result += _powers[i];
+        }
+        return result;
+    }
+
+    /** Returns the frequency with the highest power in [from, to) Hz. Zero if there is none. */
+    double getPeakFrequency(double from, double to) {
+
+        double result = 0;
+        double peak = 0;
+        for (int i = 0; i < _size; i++) {
+
+            double frequency = getFrequency(i);
+            if (frequency >= from && frequency < to && _powers[i] > peak) {
+
+                peak = _powers[i];
+                result = frequency;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread that reads the packets of a RrIntervalQueue and hands them to its consumer.
+ * It parks while the queue is empty and the producer wakes it up after each offer.
+ * Before parking it runs its idle task.
+ */
+class AnalyticsThread extends Thread {
+
+    private final RrIntervalQueue _queue;
+    private final RrIntervalQueue.Consumer _consumer;
+    private final Runnable _idleTask;
+    private volatile boolean _running = true;
+
+    /**
+     * Package constructor
+     * @param queue Queue to read
+     * @param consumer Consumer of the packets
+     * @param idleTask Task run each time the queue is found empty. Null for none
+     */
+    AnalyticsThread(RrIntervalQueue queue, RrIntervalQueue.Consumer consumer, Runnable idleTask) {
+
+        super("HeartWave-analytics");
+        _queue = queue;
+        _consumer = consumer;
+        _idleTask = idleTask;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+
+        while (_running) {
+
+            // A wake up issued between the drain and the park makes the park return immediately
+            if (_queue.drain(_consumer) == 0) {
+
+                if (_idleTask != null)
+                    _idleTask.run();
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /** Wakes up the thread to read the new packets or run the idle task. */
+    void wakeUp() {
+
+        LockSupport.unpark(this);
+    }
+
+    /** Stops the thread once the current packet is processed. */
+    void quit() {
+
+        _running = false;
+        LockSupport.unpark(this);
+    }
+}
@@ -34,7 +34,6 @@ import android.util.Log;
 import com.agustinprats.myhrv.R;
 import com.agustinprats.myhrv.model.HeartRateDevice;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -80,6 +79,10 @@ public class BleHeartRateService extends HeartRateService {
 
     String _disconnectMessage;
 
+    /** Decoder and buffer reused to read the R-R intervals of each heart rate measurement. */
+    private final HeartRateMeasurementDecoder _decoder = new HeartRateMeasurementDecoder();
+    private final int[] _rrIntervals = new int[HeartRateMeasurementDecoder.MAX_RR_INTERVALS];
+
     /** Implements callback methods for GATT events that the app cares about.
      * For example, connection change and services discovered. */
     private final BluetoothGattCallback _gattCallback = new BluetoothGattCallback() {
@@ -216,36 +219,27 @@ public class BleHeartRateService extends HeartRateService {
     private void processHeartRateMeasurement(final BluetoothGattCharacteristic characteristic) {
 
         long timeStamp = System.currentTimeMillis();
-        int flag = characteristic.getProperties();
-
-        // Heart rate format
-        int heartRateFormat = BluetoothGattCharacteristic.FORMAT_UINT8;
-        if ((flag & 0x01) != 0) heartRateFormat = BluetoothGattCharacteristic.FORMAT_UINT16;
-
-        // Energy expended status (0 == not present) (1 == present): Unit: kilo Joules
-        final boolean energyExpendedPresent = ((flag & 0x08) >> 3) > 0;
+        byte[] value = characteristic.getValue();
+        if (value == null || !_decoder.decode(value, 0, value.length, _rrIntervals)) {
 
-        // RR-Interval bit (0 == Not present) (1 == Present)
-        final boolean containRrIntervals = ((flag & 0x16) >> 4) > 0;
-        if (containRrIntervals) {
+            Log.e(TAG, "Malformed heart rate measurement");
+            return;
+        }
 
-            int offset = 2;
-            if (heartRateFormat == BluetoothGattCharacteristic.FORMAT_UINT16) offset++;
-            if (energyExpendedPresent) offset += 2;
+        if (_decoder.hasRrIntervals()) {
 
-            ArrayList<Integer> rrIntervalList = new ArrayList<Integer>();
-            while (rrIntervalList.size() < 9) {
+            // Converts from 1/1024 seconds to milli seconds skipping empty intervals
+            int count = 0;
+            for (int i = 0; i < _decoder.getRrIntervalCount(); i++) {
 
-                Integer rrInterval = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, offset);
-                if (rrInterval == null || rrInterval <= 0) break;
-                rrIntervalList.add(rrInterval);
-                offset += 2;
+                if (_rrIntervals[i] > 0)
+                    _rrIntervals[count++] = HeartRateMeasurementDecoder.toMillis(_rrIntervals[i]);
             }
 
-            if (!rrIntervalList.isEmpty()) {
+            if (count > 0) {
 
                 cancelConnectingHandler();
-                onNewRRIntervals(timeStamp, rrIntervalList);
+                onNewRRIntervals(timeStamp, _rrIntervals, count);
             }
             else
                 Log.e(TAG, "RR interval list empty!");
@@ -0,0 +1,176 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.service;
+
+/**
+ * Decoder of the Bluetooth Heart Rate Measurement characteristic (0x2A37) payload.
+ * It works straight over the raw bytes so it doesn't depend on the Android GATT classes
+ * and it doesn't allocate memory. An instance can be reused for every measurement.
+ *
+ * Payload layout (little endian):
+ *      flags              uint8
+ *      heart rate         uint8 or uint16 (flags bit 0)
+ *      energy expended    uint16 in kilo Joules, if flags bit 3 is set
+ *      R-R intervals      uint16 in 1/1024 seconds each, if flags bit 4 is set
+ *
+ * Specs:
+ * http://developer.bluetooth.org/gatt/characteristics/Pages/CharacteristicViewer.aspx?u=org.bluetooth.characteristic.heart_rate_measurement.xml
+ */
+public class HeartRateMeasurementDecoder {
+
+    // Flags
+    public static final int FLAG_HEART_RATE_UINT16 = 0x01;
+    public static final int FLAG_SENSOR_CONTACT_DETECTED = 0x02;
+    public static final int FLAG_SENSOR_CONTACT_SUPPORTED = 0x04;
+    public static final int FLAG_ENERGY_EXPENDED = 0x08;
+    public static final int FLAG_RR_INTERVALS = 0x10;
+
+    // Sensor contact status
+    public static final int SENSOR_CONTACT_NOT_SUPPORTED = 0;
+    public static final int SENSOR_CONTACT_NOT_DETECTED = 1;
+    public static final int SENSOR_CONTACT_DETECTED = 2;
+
+    /** Max number of R-R intervals that fit in a default 20 bytes notification. */
+    public static final int MAX_RR_INTERVALS = 9;
+
+    /** R-R intervals are measured in 1/RR_INTERVAL_RESOLUTION seconds. */
+    public static final int RR_INTERVAL_RESOLUTION = 1024;
+
+    private int _flags;
+    private int _heartRate;
+    private int _sensorContact;
+    private int _energyExpended;
+    private int _rrIntervalCount;
+
+    /**
+     * Decodes a heart rate measurement.
+     * @param value Raw characteristic value
+     * @param offset Position of the flags byte in value
+     * @param length Number of bytes of the measurement
+     * @param rrIntervals Array where the R-R intervals are stored in 1/1024 seconds.
+     *                    Intervals that don't fit in the array are ignored
+     * @return True if decoded. False if the measurement is truncated
+     */
+    public boolean decode(byte[] value, int offset, int length, int[] rrIntervals) {
+
+        _flags = 0;
+        _heartRate = 0;
+        _sensorContact = SENSOR_CONTACT_NOT_SUPPORTED;
+        _energyExpended = -1;
+        _rrIntervalCount = 0;
+
+        if (value == null || length < 2 || offset + length > value.length)
+            return false;
+
+        int end = offset + length;
+        int position = offset;
+        int flags = value[position++] & 0xFF;
+
+        // Heart rate
+        if ((flags & FLAG_HEART_RATE_UINT16) != 0) {
+
+            if (position + 2 > end)
+                return false;
+            _heartRate = readUint16(value, position);
+            position += 2;
+        }
+        else {
+
+            _heartRate = value[position++] & 0xFF;
+        }
+
+        // Sensor contact
+        if ((flags & FLAG_SENSOR_CONTACT_SUPPORTED) != 0) {
+
+            _sensorContact = (flags & FLAG_SENSOR_CONTACT_DETECTED) != 0 ? SENSOR_CONTACT_DETECTED : SENSOR_CONTACT_NOT_DETECTED;
+        }
+
+        // Energy expended
+        if ((flags & FLAG_ENERGY_EXPENDED) != 0) {
+
+            if (position + 2 > end)
+                return false;
+            _energyExpended = readUint16(value, position);
+            position += 2;
+        }
+
+        // R-R intervals fill the rest of the measurement
+        if ((flags & FLAG_RR_INTERVALS) != 0) {
+
+            int capacity = rrIntervals != null ? rrIntervals.length : 0;
+            while (position + 2 <= end && _rrIntervalCount < capacity) {
+
+                rrIntervals[_rrIntervalCount++] = readUint16(value, position);
+                position += 2;
+            }
+        }
+
+        _flags = flags;
+        return true;
+    }
+
+    /** Returns the flags of the last decoded measurement. */
+    public int getFlags() {
+
+        return _flags;
+    }
+
+    /** Returns the heart rate of the last decoded measurement in beats per minute. */
+    public int getHeartRate() {
+
+        return _heartRate;
+    }
+
+    /** Returns the sensor contact status of the last decoded measurement.
+     *  See SENSOR_CONTACT_NOT_SUPPORTED, SENSOR_CONTACT_NOT_DETECTED and SENSOR_CONTACT_DETECTED. */
+    public int getSensorContact() {
+
+        return _sensorContact;
+    }
+
+    /** Returns the energy expended of the last decoded measurement in kilo Joules or -1 if not present. */
+    public int getEnergyExpended() {
+
+        return _energyExpended;
+    }
+
+    /** Returns true if the last decoded measurement has the R-R intervals field. */
+    public boolean hasRrIntervals() {
+
+        return (_flags & FLAG_RR_INTERVALS) != 0;
+    }
+
+    /** Returns the number of R-R intervals stored by the last decode. */
+    public int getRrIntervalCount() {
+
+        return _rrIntervalCount;
+    }
+
+    /** Converts a R-R interval from 1/1024 seconds to milli seconds rounding to the nearest. */
+    public static int toMillis(int rrInterval) {
+
+        return (rrInterval * 1000 + RR_INTERVAL_RESOLUTION / 2) / RR_INTERVAL_RESOLUTION;
+    }
+
+    /** Reads a little endian unsigned 16 bits integer. */
+    private static int readUint16(byte[] value, int position) {
+
+        return (value[position] & 0xFF) | ((value[position + 1] & 0xFF) << 8);
+    }
+}
@@ -36,16 +36,20 @@ import com.agustinprats.myhrv.MainActivity;
 import com.agustinprats.myhrv.R;
 import com.agustinprats.myhrv.model.CoherenceZone;
 import com.agustinprats.myhrv.model.HeartRateDevice;
-import com.agustinprats.myhrv.model.RrInterval;
+import com.agustinprats.myhrv.model.MetricRegistry;
+import com.agustinprats.myhrv.model.MetricsSnapshot;
 import com.agustinprats.myhrv.model.RrIntervalList;
 import com.agustinprats.myhrv.model.RrIntervalListListener;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Base class that defines the basic functionality of a service that connects
- * to a heart rate device and keeps a list with all R-R intervals measured
+ * to a heart rate device and keeps a list with all R-R intervals measured.
+ *
+ * R-R intervals received from the device are only queued in the calling thread. A single
+ * analytics thread reads the queue, owns all the changes of the R-R interval list and
+ * notifies the listeners, so the device callbacks return right away.
  */
 public abstract class HeartRateService extends Service implements RrIntervalListListener {
 
@@ -66,6 +70,9 @@ public abstract class HeartRateService extends Service implements RrIntervalList
     /** Max dropped intervals in a row before disconnecting. */
     private static final int MAX_DROPPED_IN_A_ROW = 5;
 
+    /** Max number of R-R interval packets waiting to be processed. */
+    private static final int QUEUE_CAPACITY = 64;
+
     // Default device values
     private static final String DEFAULT_DEVICE_MANUFACTURER = "na";
     private static final String DEFAULT_DEVICE_MODEL = "na";
@@ -73,14 +80,40 @@ public abstract class HeartRateService extends Service implements RrIntervalList
     /** Current connection state. */
     private int _connectionState = STATE_DISCONNECTED;
 
-    /** Stored valid R-R intervals. */
-    private RrIntervalList _intervals;
+    /** Stored valid R-R intervals of the current session. Only the analytics thread adds intervals to it. */
+    private volatile RrIntervalList _intervals;
+
+    /** Number of the current session. The received packets are tagged with it. */
+    private volatile int _session = 0;
+
+    /** Metrics of the stored R-R intervals published by the analytics thread after each packet. */
+    private volatile MetricsSnapshot _snapshot;
+
+    /** Guards the start of a session against the publication of a snapshot of the previous one. */
+    private final Object _sessionLock = new Object();
+
+    // Session being processed by the analytics thread. It falls behind the current one until the
+    // packets queued before a reset are processed. Only used by the analytics thread
+    private RrIntervalList _analyticsIntervals = null;
+    private int _analyticsSession = 0;
+
+    /** Packets of R-R intervals waiting to be processed by the analytics thread. */
+    private final RrIntervalQueue _queue = new RrIntervalQueue(QUEUE_CAPACITY, HeartRateMeasurementDecoder.MAX_RR_INTERVALS);
+
+    /** Thread that processes the queued R-R intervals. */
+    private AnalyticsThread _analyticsThread;
+
+    /** Subscriptions to the optional metrics. They are kept between sessions. */
+    private final MetricRegistry _metricRegistry = new MetricRegistry();
+
+    /** Coherence calculation mode of the next session. */
+    private int _coherenceMode = RrIntervalList.COHERENCE_BFS;
 
     /** True if the app is in foreground. False otherwise. */
     private boolean _inForeground = false;
 
-    /** List of listener to be notified when new values are available. */
-    private List<HeartRateServiceListener> _listeners = new ArrayList<HeartRateServiceListener>();
+    /** List of listener to be notified when new values are available. Copied on write so any thread can iterate it. */
+    private volatile HeartRateServiceListener[] _listeners = new HeartRateServiceListener[0];
 
     /** Current device address. */
     protected String _deviceAddress = null;
@@ -95,6 +128,21 @@ public abstract class HeartRateService extends Service implements RrIntervalList
     /** Last error code. */
     protected Integer _errorCode = null;
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        _analyticsThread = new AnalyticsThread(_queue, _packetConsumer, _sessionUpdater);
+        _analyticsThread.start();
+    }
+
+    @Override
+    public void onDestroy() {
+
+        _analyticsThread.quit();
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
 
@@ -160,12 +208,19 @@ public abstract class HeartRateService extends Service implements RrIntervalList
         edit.apply();
     }
 
-    /** Returns the stored valid R-R intervals. */
+    /** Returns the stored valid R-R intervals.
+     *  The list is changed by the analytics thread. Other threads should read getSnapshot() instead. */
     public RrIntervalList getIntervals() {
 
         return _intervals;
     }
 
+    /** Returns the last published metrics of the stored R-R intervals. It can be read from any thread. */
+    public MetricsSnapshot getSnapshot() {
+
+        return _snapshot;
+    }
+
     /** Called when connected to a device. */
     public void onConnected() {
 
@@ -177,12 +232,61 @@ public abstract class HeartRateService extends Service implements RrIntervalList
             listener.onHeartRateServiceConnected();
     }
 
-    /** Clears all the stored R-R intervals. */
+    /**
+     * Clears all the stored R-R intervals starting a new session.
+     * The packets queued before are still processed by the analytics thread in the previous session
+     * but its snapshots aren't published anymore.
+     */
     public void resetIntervals() {
         Log.d(TAG, "resetIntervals");
-        _intervals = new RrIntervalList();
-        _intervals.setListener(this);
+        RrIntervalList intervals = new RrIntervalList(RrIntervalList.DEFAULT_CHART_SPAN, _coherenceMode);
+        intervals.setListener(this);
+        intervals.setMetricRegistry(_metricRegistry);
+        MetricsSnapshot snapshot = intervals.newSnapshot(0);
+        synchronized (_sessionLock) {
+
+            _intervals = intervals;
+            _snapshot = snapshot;
+            _session++;
+        }
         _errorCode = null;
+
+        if (_analyticsThread != null)
+            _analyticsThread.wakeUp();
+    }
+
+    /**
+     * Sets the coherence calculation mode. It's applied when the intervals are reset for the next session.
+     * @param coherenceMode RrIntervalList.COHERENCE_BFS or RrIntervalList.COHERENCE_SPECTRAL
+     */
+    public void setCoherenceMode(int coherenceMode) {
+
+        _coherenceMode = coherenceMode;
+    }
+
+    /**
+     * Subscribes to an optional metric so it's calculated and published in the snapshots.
+     * Every call should be paired with unsubscribeMetric() once the metric isn't displayed.
+     * @param metric MetricRegistry.METRIC_ constant
+     */
+    public void subscribeMetric(int metric) {
+
+        _metricRegistry.subscribe(metric);
+    }
+
+    /**
+     * Removes a subscription to an optional metric. It stops being calculated without subscribers.
+     * @param metric MetricRegistry.METRIC_ constant
+     */
+    public void unsubscribeMetric(int metric) {
+
+        _metricRegistry.unsubscribe(metric);
+    }
+
+    /** Returns the coherence calculation mode of the next session. */
+    public int getCoherenceMode() {
+
+        return _coherenceMode;
     }
 
     /** Called when connecting to a device. */
@@ -252,27 +356,83 @@ public abstract class HeartRateService extends Service implements RrIntervalList
         _deviceModel = model;
     }
 
-    /** Called when new R-R intervals are received from the device. */
-    public void onNewRRIntervals(long timestamp, ArrayList<Integer> rrIntervalList) {
+    /**
+     * Called when new R-R intervals are received from the device.
+     * It only queues them for the analytics thread so it returns right away and it doesn't allocate memory.
+     * @param timestamp Timestamp of the last R-R interval
+     * @param rrIntervals R-R intervals received. The caller can reuse the array once this returns
+     * @param count Number of R-R intervals received
+     */
+    public void onNewRRIntervals(long timestamp, int[] rrIntervals, int count) {
+
+        if (!_queue.offer(_session, timestamp, rrIntervals, count))
+            Log.w(TAG, "R-R interval queue full. Packet dropped");
+        _analyticsThread.wakeUp();
+    }
+
+    /** Processes the queued R-R intervals in the analytics thread. */
+    private final RrIntervalQueue.Consumer _packetConsumer = new RrIntervalQueue.Consumer() {
 
-        int dropped = 0;
-        int added = 0;
-        ArrayList<Long> timestamps = new ArrayList<Long>(rrIntervalList.size());
-        for (int i = rrIntervalList.size() - 1; i >= 0 && !rrIntervalList.isEmpty(); i--) {
+        @Override
+        public void onPacket(int session, long timestamp, int[] rrIntervals, int offset, int count) {
 
-            Integer rrInterval = rrIntervalList.get(i);
-            timestamps.add(0, timestamp);
-            timestamp -= rrInterval;
+            processRRIntervals(session, timestamp, rrIntervals, offset, count);
         }
-        for (int i = 0; i < rrIntervalList.size(); i++) {
+    };
 
-            RrInterval rrInterval = new RrInterval(timestamps.get(i), rrIntervalList.get(i));
-            if (_intervals.add(rrInterval)) {
-                added++;
-            }
+    /** Moves the analytics thread to the current session once the queue is empty. */
+    private final Runnable _sessionUpdater = new Runnable() {
+
+        @Override
+        public void run() {
+
+            updateAnalyticsSession();
         }
+    };
+
+    /**
+     * Moves the analytics thread to the current session if a new one started. Called by the analytics thread.
+     * The list of the previous session is dropped with the interval its artifact corrector holds,
+     * as it's no longer published.
+     */
+    private void updateAnalyticsSession() {
 
-        if (_intervals.getDroppedInARow() >= MAX_DROPPED_IN_A_ROW) {
+        if (_analyticsSession == _session)
+            return;
+
+        synchronized (_sessionLock) {
+
+            _analyticsIntervals = _intervals;
+            _analyticsSession = _session;
+        }
+    }
+
+    /** Adds the R-R intervals to the list and notifies the listeners. Called by the analytics thread. */
+    private void processRRIntervals(int session, long timestamp, int[] rrIntervals, int offset, int count) {
+
+        if (session != _analyticsSession) {
+
+            updateAnalyticsSession();
+
+            // Packet of a session that ended before it could be processed
+            if (session != _analyticsSession)
+                return;
+        }
+
+        RrIntervalList intervals = _analyticsIntervals;
+        int droppedCount = intervals.getDroppedCount();
+        int added = intervals.addAll(timestamp, rrIntervals, offset, count);
+        int dropped = intervals.getDroppedCount() - droppedCount;
+        MetricsSnapshot snapshot = intervals.newSnapshot(added);
+        synchronized (_sessionLock) {
+
+            // The session ended while processing the packet
+            if (intervals != _intervals)
+                return;
+            _snapshot = snapshot;
+        }
+
+        if (intervals.getDroppedInARow() >= MAX_DROPPED_IN_A_ROW) {
 
             disconnect(Integer.valueOf((R.string.unstable_connection)));
         }
@@ -281,48 +441,52 @@ public abstract class HeartRateService extends Service implements RrIntervalList
             // Notifying _listeners
             if (added > 0)
                 for (HeartRateServiceListener listener : _listeners)
-                    listener.onHeartRateServiceNewRrIntervals(_intervals, added);
+                    listener.onHeartRateServiceNewRrIntervals(snapshot);
             if (dropped > 0)
                 for (HeartRateServiceListener listener : _listeners)
                     listener.onHeartRateServiceDroppedIntervals(dropped);
         }
     }
 
-    /** Publish a notification with the coherence zone. */
+    /** Publish a notification with the coherence zone of the last published metrics. */
     private void notifyCoherenceZone(boolean notify, boolean playSound) {
+
+        MetricsSnapshot snapshot = _snapshot;
+        if (snapshot != null)
+            notifyCoherenceZone(snapshot.getCoherenceZone(), notify, playSound);
+    }
+
+    /** Publish a notification with the specified coherence zone. */
+    private void notifyCoherenceZone(CoherenceZone currentCoherenceZone, boolean notify, boolean playSound) {
         Log.d(TAG, "notifyCoherenceZone(" + notify + " ," + playSound + ")");
 
         NotificationManager mgr = (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
 
-        if (_intervals != null) {
-
-            CoherenceZone currentCoherenceZone = _intervals.getCoherenceZone();
-            if (notify && currentCoherenceZone != null) {
-                Notification.Builder builder = new Notification.Builder(getApplicationContext())
-                        .setAutoCancel(true)
-                        .setPriority(Notification.PRIORITY_DEFAULT)
-                        .setSmallIcon(currentCoherenceZone.getIcon())
-                        .setContentTitle(getApplicationContext().getString(R.string.coherence))
-                        .setContentText(getString(currentCoherenceZone.getStringId()));
+        if (notify && currentCoherenceZone != null) {
+            Notification.Builder builder = new Notification.Builder(getApplicationContext())
+                    .setAutoCancel(true)
+                    .setPriority(Notification.PRIORITY_DEFAULT)
+                    .setSmallIcon(currentCoherenceZone.getIcon())
+                    .setContentTitle(getApplicationContext().getString(R.string.coherence))
+                    .setContentText(getString(currentCoherenceZone.getStringId()));
 
-                if (playSound) {
+            if (playSound) {
 
-                    Uri alarmSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-                    builder.setSound(alarmSound);
-                }
+                Uri alarmSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+                builder.setSound(alarmSound);
+            }
 
-                Intent noteIntent = new Intent(getApplicationContext(), MainActivity.class);
-                PendingIntent pendingIntent = PendingIntent.getActivity(getApplicationContext(), 0, noteIntent, PendingIntent.FLAG_CANCEL_CURRENT);
-                builder.setContentIntent(pendingIntent);
+            Intent noteIntent = new Intent(getApplicationContext(), MainActivity.class);
+            PendingIntent pendingIntent = PendingIntent.getActivity(getApplicationContext(), 0, noteIntent, PendingIntent.FLAG_CANCEL_CURRENT);
+            builder.setContentIntent(pendingIntent);
 
-                Notification notification = builder.build();
-                notification.defaults = 0;
-                mgr.notify(COHERENCE_NOTIFICATION_ID, notification);
-            }
-            else {
+            Notification notification = builder.build();
+            notification.defaults = 0;
+            mgr.notify(COHERENCE_NOTIFICATION_ID, notification);
+        }
+        else {
 
-                mgr.cancel(COHERENCE_NOTIFICATION_ID);
-            }
+            mgr.cancel(COHERENCE_NOTIFICATION_ID);
         }
     }
 
@@ -362,7 +526,7 @@ public abstract class HeartRateService extends Service implements RrIntervalList
     /** Called when the coherence zone changes. */
     public void onCoherenceZoneChanged(CoherenceZone oldz, CoherenceZone newz) {
 
-        notifyCoherenceZone(!_inForeground, oldz.getIndex() > newz.getIndex());
+        notifyCoherenceZone(newz, !_inForeground, oldz.getIndex() > newz.getIndex());
     }
 
     /**
@@ -377,16 +541,54 @@ public abstract class HeartRateService extends Service implements RrIntervalList
     }
 
     /** Adds a new listener to be notified when new values are available. */
-    public void addServiceListener(HeartRateServiceListener listener) {
+    public synchronized void addServiceListener(HeartRateServiceListener listener) {
+
+        if (listener != null && indexOfListener(listener) < 0) {
 
-        if (listener != null && !_listeners.contains(listener))
-            _listeners.add(listener);
+            HeartRateServiceListener[] listeners = Arrays.copyOf(_listeners, _listeners.length + 1);
+            listeners[_listeners.length] = listener;
+            _listeners = listeners;
+        }
     }
 
     /** Removes the specified listener. */
-    public void removeServiceListener(HeartRateServiceListener listener) {
+    public synchronized void removeServiceListener(HeartRateServiceListener listener) {
+
+        int index = indexOfListener(listener);
+        if (index >= 0) {
+
+            HeartRateServiceListener[] listeners = new HeartRateServiceListener[_listeners.length - 1];
+            System.arraycopy(_listeners, 0, listeners, 0, index);
+            System.arraycopy(_listeners, index + 1, listeners, index, listeners.length - index);
+            _listeners = listeners;
+        }
+    }
+
+    /** Returns the position of the listener or -1 if not found. */
+    private int indexOfListener(HeartRateServiceListener listener) {
+
+        for (int i = 0; i < _listeners.length; i++)
+            if (_listeners[i] == listener)
+                return i;
+        return -1;
+    }
+
+    /** Returns the number of R-R interval packets waiting to be processed. */
+    public int getQueueDepth() {
+
+        return _queue.getDepth();
+    }
+
+    /** Returns the max number of R-R interval packets that have been waiting to be processed at once. */
+    public int getQueueMaxDepth() {
+
+        return _queue.getMaxDepth();
+    }
+
+    /** Returns the number of R-R interval packets dropped because the queue was full. */
+    public long getQueueOverflowCount() {
 
-        _listeners.remove(listener);
+        return _queue.getOverflowCount();
     }
 
     /** Called when the heart rate device scan stops. */
@@ -18,8 +18,8 @@
 
 package com.agustinprats.myhrv.service;
 
-import com.agustinprats.myhrv.model.RrIntervalList;
 import com.agustinprats.myhrv.model.HeartRateDevice;
+import com.agustinprats.myhrv.model.MetricsSnapshot;
 
 /**
  * Listener callbacks of the HeartRateService
@@ -40,9 +40,8 @@ public interface HeartRateServiceListener {
     void onHeartRateServiceBatteryLevelChanged(int newLevel);
 
     /** Called when new RR intervals are received
-     *  @intervals All intervals received while the device's been connected
-     *  @count Number of RR intervals that are new. They can be found at the end of the list */
-    void onHeartRateServiceNewRrIntervals(RrIntervalList intervals, int count);
+     *  @snapshot Metrics after adding the new intervals. The new intervals are in getNewRrIntervals() */
+    void onHeartRateServiceNewRrIntervals(MetricsSnapshot snapshot);
 
     /** Called when intervals are dropped because
      *  are out of range of because changed to fast */
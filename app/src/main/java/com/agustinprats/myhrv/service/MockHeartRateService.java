@@ -25,7 +25,6 @@ import android.util.Log;
 import com.agustinprats.myhrv.model.HeartRateDevice;
 import com.agustinprats.myhrv.util.Utils;
 
-import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -43,6 +42,7 @@ public class MockHeartRateService extends HeartRateService {
     private boolean _scanning = false;
     private Timer _timer = null;
     private long _lastTimestamp = 0;
+    private final int[] _rrIntervals = new int[1];
 
     @Override
     public void onConnected() {
@@ -71,9 +71,8 @@ public class MockHeartRateService extends HeartRateService {
 
                     if (_lastTimestamp > 0) {
 
-                        ArrayList<Integer> intervals = new ArrayList<Integer>();
-                        intervals.add((int) (now - _lastTimestamp));
-                        onNewRRIntervals(now, intervals);
+                        _rrIntervals[0] = (int) (now - _lastTimestamp);
+                        onNewRRIntervals(now, _rrIntervals, 1);
                     }
 
                     _lastTimestamp = now;
@@ -0,0 +1,156 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue of R-R interval packets with a single producer and a single consumer.
+ * The producer is the thread that receives the heart rate measurements and the consumer the
+ * analytics thread. Packets are copied into preallocated arrays so neither side allocates memory
+ * or blocks. When the queue is full the new packet is dropped and counted as an overflow.
+ */
+class RrIntervalQueue {
+
+    /** Receives the packets read from the queue. */
+    interface Consumer {
+
+        /**
+         * Called for each packet in the consumer thread.
+         * @param session Session of the packet given by the producer
+         * @param timestamp Timestamp of the last R-R interval of the packet
+         * @param rrIntervals Array holding the R-R intervals. Only valid until this returns
+         * @param offset Position of the first R-R interval of the packet in rrIntervals
+         * @param count Number of R-R intervals of the packet
+         */
+        void onPacket(int session, long timestamp, int[] rrIntervals, int offset, int count);
+    }
+
+    private final int _mask;
+    private final int _packetSize;
+
+    // Packet slots
+    private final int[] _sessions;
+    private final long[] _timestamps;
+    private final int[] _counts;
+    private final int[] _rrIntervals;
+
+    /** Sequence number of the next packet to read. Only written by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Sequence number of the next packet to write. Only written by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** Last head read by the producer. It saves reading the consumer's counter on every offer. */
+    private long _cachedHead = 0;
+
+    // Counters. Only written by the producer.
+    private volatile long _overflowCount = 0;
+    private volatile int _maxDepth = 0;
+
+    /**
+     * Package constructor
+     * @param capacity Max number of packets queued. Rounded up to a power of two
+     * @param packetSize Max number of R-R intervals of a packet
+     */
+    RrIntervalQueue(int capacity, int packetSize) {
+
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        _mask = size - 1;
+        _packetSize = packetSize;
+        _sessions = new int[size];
+        _timestamps = new long[size];
+        _counts = new int[size];
+        _rrIntervals = new int[size * packetSize];
+    }
+
+    /**
+     * Queues a packet. Called by the producer.
+     * @param session Session the R-R intervals belong to. The consumer uses it to find the end of a session
+     * @param timestamp Timestamp of the last R-R interval
+     * @param rrIntervals R-R intervals. They are copied so the caller can reuse the array
+     * @param count Number of R-R intervals. Intervals beyond the packet size are ignored
+     * @return True if queued. False if the queue is full and the packet was dropped
+     */
+    boolean offer(int session, long timestamp, int[] rrIntervals, int count) {
+
+        long tail = _tail.get();
+        if (tail - _cachedHead > _mask) {
+
+            _cachedHead = _head.get();
+            if (tail - _cachedHead > _mask) {
+
+                _overflowCount++;
+                return false;
+            }
+        }
+
+        int slot = (int) tail & _mask;
+        count = Math.min(count, _packetSize);
+        System.arraycopy(rrIntervals, 0, _rrIntervals, slot * _packetSize, count);
+        _sessions[slot] = session;
+        _timestamps[slot] = timestamp;
+        _counts[slot] = count;
+
+        // Publishes the slot to the consumer
+        _tail.lazySet(tail + 1);
+
+        int depth = (int) (tail + 1 - _head.get());
+        if (depth > _maxDepth)
+            _maxDepth = depth;
+        return true;
+    }
+
+    /**
+     * Reads all the queued packets. Called by the consumer.
+     * @return Number of packets read
+     */
+    int drain(Consumer consumer) {
+
+        long head = _head.get();
+        long tail = _tail.get();
+        for (long sequence = head; sequence < tail; sequence++) {
+
+            int slot = (int) sequence & _mask;
+            consumer.onPacket(_sessions[slot], _timestamps[slot], _rrIntervals, slot * _packetSize, _counts[slot]);
+
+            // Releases the slot to the producer
+            _head.lazySet(sequence + 1);
+        }
+        return (int) (tail - head);
+    }
+
+    /** Returns the number of packets waiting to be read. */
+    int getDepth() {
+
+        return (int) Math.max(0, _tail.get() - _head.get());
+    }
+
+    /** Returns the max number of packets that have been waiting at once. */
+    int getMaxDepth() {
+
+        return _maxDepth;
+    }
+
+    /** Returns the number of packets dropped because the queue was full. */
+    long getOverflowCount() {
+
+        return _overflowCount;
+    }
+}
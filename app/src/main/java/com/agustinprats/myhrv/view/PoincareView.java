@@ -0,0 +1,142 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.agustinprats.myhrv.model.MetricsSnapshot;
+
+/**
+ * Poincaré plot of the newest R-R intervals: each interval against the next one, with the
+ * identity line as reference. Points are copied into a buffer of MetricsSnapshot.POINCARE_POINTS
+ * created once, so new snapshots don't allocate memory.
+ */
+public class PoincareView extends View {
+
+    /** Milli seconds added around the points so they don't touch the borders. */
+    private static final int MARGIN = 20;
+
+    /** Min milli seconds displayed on each axis. */
+    private static final int MIN_RANGE = 200;
+
+    // Points in milli seconds as x, y pairs and the same points in pixels
+    private final float[] _points = new float[2 * MetricsSnapshot.POINCARE_POINTS];
+    private final float[] _pixels = new float[2 * MetricsSnapshot.POINCARE_POINTS];
+    private int _count = 0;
+
+    /** Snapshot displayed. */
+    private MetricsSnapshot _snapshot = null;
+
+    // Range in milli seconds displayed on both axes
+    private float _min = 0;
+    private float _max = 0;
+
+    private final Paint _pointPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint _linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    /** Public constructor. */
+    public PoincareView(Context context) {
+
+        super(context);
+        initPaints();
+    }
+
+    /** Public constructor. */
+    public PoincareView(Context context, AttributeSet attrs) {
+
+        super(context, attrs);
+        initPaints();
+    }
+
+    /** Public constructor. */
+    public PoincareView(Context context, AttributeSet attrs, int defStyle) {
+
+        super(context, attrs, defStyle);
+        initPaints();
+    }
+
+    private void initPaints() {
+
+        _pointPaint.setColor(Color.WHITE);
+        _pointPaint.setStrokeWidth(4);
+        _pointPaint.setStrokeCap(Paint.Cap.ROUND);
+        _linePaint.setColor(Color.argb(0x80, 0xFF, 0xFF, 0xFF));
+        _linePaint.setStrokeWidth(1);
+    }
+
+    /** Displays the Poincaré points of a snapshot. Nothing is done if the snapshot is already displayed. */
+    public void setSnapshot(MetricsSnapshot snapshot) {
+
+        if (snapshot == null || snapshot == _snapshot)
+            return;
+
+        _snapshot = snapshot;
+        _count = snapshot.getPoincareSize();
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < _count; i++) {
+
+            int x = snapshot.getPoincareX(i);
+            int y = snapshot.getPoincareY(i);
+            _points[2 * i] = x;
+            _points[2 * i + 1] = y;
+            min = Math.min(min, Math.min(x, y));
+            max = Math.max(max, Math.max(x, y));
+        }
+
+        if (_count > 0) {
+
+            // Same square range on both axes so the identity line is the diagonal
+            int range = Math.max(MIN_RANGE, max - min + 2 * MARGIN);
+            _min = (min + max - range) / 2f;
+            _max = _min + range;
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+
+        super.onDraw(canvas);
+
+        float left = getPaddingLeft();
+        float bottom = getHeight() - getPaddingBottom();
+        float size = Math.min(getWidth() - getPaddingLeft() - getPaddingRight(),
+                getHeight() - getPaddingTop() - getPaddingBottom());
+        if (size <= 0)
+            return;
+
+        canvas.drawLine(left, bottom, left + size, bottom - size, _linePaint);
+        if (_count == 0)
+            return;
+
+        float scale = size / (_max - _min);
+        for (int i = 0; i < _count; i++) {
+
+            _pixels[2 * i] = left + (_points[2 * i] - _min) * scale;
+            _pixels[2 * i + 1] = bottom - (_points[2 * i + 1] - _min) * scale;
+        }
+        canvas.drawPoints(_pixels, 0, 2 * _count, _pointPaint);
+    }
+}
@@ -0,0 +1,149 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.agustinprats.myhrv.model.SpectrogramFrame;
+
+/**
+ * Heatmap of the spectrogram of the heart rhythm. Time goes from left to right with the newest
+ * column at the right border and frequency from bottom to top. Power is displayed in a
+ * logarithmic scale relative to the highest power of the frame.
+ * The bitmap, pixels and palette are created once, so new frames don't allocate memory.
+ */
+public class SpectrogramView extends View {
+
+    /** Number of decades of power below the highest one that are displayed. */
+    private static final double DECADES = 3;
+
+    /** Number of colors of the palette. */
+    private static final int PALETTE_SIZE = 256;
+
+    private final int[] _palette = createPalette();
+    private final Paint _paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect _source = new Rect();
+    private final Rect _destination = new Rect();
+
+    // Created with the first frame. One pixel per column and bin
+    private Bitmap _bitmap = null;
+    private int[] _pixels = null;
+
+    /** Frame displayed. */
+    private SpectrogramFrame _frame = null;
+
+    /** Public constructor. */
+    public SpectrogramView(Context context) {
+
+        super(context);
+    }
+
+    /** Public constructor. */
+    public SpectrogramView(Context context, AttributeSet attrs) {
+
+        super(context, attrs);
+    }
+
+    /** Public constructor. */
+    public SpectrogramView(Context context, AttributeSet attrs, int defStyle) {
+
+        super(context, attrs, defStyle);
+    }
+
+    /** Displays a spectrogram. Nothing is done if the frame is already displayed. */
+    public void setFrame(SpectrogramFrame frame) {
+
+        if (frame == null || frame == _frame)
+            return;
+
+        _frame = frame;
+        int width = frame.getMaxColumnCount();
+        int height = frame.getBinCount();
+        if (_bitmap == null || _bitmap.getWidth() != width || _bitmap.getHeight() != height) {
+
+            _bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            _pixels = new int[width * height];
+            _source.set(0, 0, width, height);
+        }
+
+        // Columns are aligned to the right and the missing ones are left transparent
+        int offset = width - frame.getColumnCount();
+        double max = frame.getMaxValue();
+        double logMax = max > 0 ? Math.log10(max) : 0;
+        for (int x = 0; x < width; x++) {
+
+            for (int bin = 0; bin < height; bin++) {
+
+                int color = 0;
+                if (x >= offset && max > 0) {
+
+                    double value = frame.getValue(x - offset, bin);
+                    double level = value > 0 ? 1 + (Math.log10(value) - logMax) / DECADES : 0;
+                    color = _palette[(int) (Math.max(0, Math.min(1, level)) * (PALETTE_SIZE - 1))];
+                }
+                _pixels[(height - 1 - bin) * width + x] = color;
+            }
+        }
+        _bitmap.setPixels(_pixels, 0, width, 0, 0, width, height);
+        invalidate();
+    }
+
+    /** Removes the spectrogram displayed. */
+    public void clear() {
+
+        _frame = null;
+        if (_bitmap != null)
+            _bitmap.eraseColor(0);
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+
+        super.onDraw(canvas);
+        if (_bitmap == null)
+            return;
+
+        _destination.set(getPaddingLeft(), getPaddingTop(),
+                getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        canvas.drawBitmap(_bitmap, _source, _destination, _paint);
+    }
+
+    /** Returns a palette from transparent dark blue for the lowest power to opaque yellow for the highest. */
+    private static int[] createPalette() {
+
+        int[] palette = new int[PALETTE_SIZE];
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+
+            float level = (float) i / (PALETTE_SIZE - 1);
+            int alpha = (int) (64 + 191 * level);
+            int red = (int) (255 * Math.min(1, 2 * level));
+            int green = (int) (255 * Math.max(0, 2 * level - 1));
+            int blue = (int) (128 * (1 - level));
+            palette[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+        return palette;
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Press-Rybicki periodogram against evaluating the Lomb-Scargle sums directly at every
+ * frequency, over windows of R-R intervals built as RrIntervalList does.
+ */
+public class LombScarglePeriodogramTest {
+
+    /** Error allowed relative to the highest power of the direct periodogram. */
+    private static final double TOLERANCE = 1e-3;
+
+    @Test
+    public void matchesDirectPeriodogram() {
+
+        Random random = new Random(11);
+        LombScarglePeriodogram periodogram = new LombScarglePeriodogram(FrequencyMetrics.HF_MAX);
+        for (int session = 0; session < 500; session++) {
+
+            int count = 70 + random.nextInt(120);
+            double[] times = new double[count];
+            double[] values = new double[count];
+            fillWindow(random, times, values, count);
+            assertMatchesDirect(periodogram, times, values, count);
+        }
+    }
+
+    @Test
+    public void lastSampleNextToGridPoint() {
+
+        // The last sample is always close to the grid point fftSize / OVERSAMPLING. Checks the
+        // windows where its position falls just before the point but rounds to it once one based
+        Random random = new Random(11);
+        int found = 0;
+        for (int session = 0; session < 2000; session++) {
+
+            int count = 70 + random.nextInt(120);
+            double[] times = new double[count];
+            double[] values = new double[count];
+            fillWindow(random, times, values, count);
+
+            double span = times[count - 1] - times[0];
+            int size = (int) Math.ceil(FrequencyMetrics.HF_MAX * span * LombScarglePeriodogram.OVERSAMPLING);
+            int fftSize = 128;
+            while (fftSize < 16 * size)
+                fftSize <<= 1;
+            double scale = fftSize / (span * LombScarglePeriodogram.OVERSAMPLING);
+            double position = (span * scale) % fftSize;
+            if (position == Math.rint(position) || position + 1 != Math.rint(position + 1))
+                continue;
+
+            // A new periodogram so the transform size is the one calculated
+            found++;
+            assertMatchesDirect(new LombScarglePeriodogram(FrequencyMetrics.HF_MAX), times, values, count);
+        }
+        assertTrue(found > 0);
+    }
+
+    /**
+     * Fills a window of R-R intervals with respiratory and baroreflex oscillations. Times are the
+     * end of each interval in seconds from the start of the session, as integer milli seconds.
+     */
+    private static void fillWindow(Random random, double[] times, double[] values, int count) {
+
+        long time = random.nextInt(3600000);
+        double respiration = 0.15 + 0.2 * random.nextDouble();
+        double baroreflex = 0.06 + 0.06 * random.nextDouble();
+        for (int i = 0; i < count; i++) {
+
+            double seconds = time / 1000.0;
+            int rrInterval = (int) (850 + 50 * Math.sin(2 * Math.PI * respiration * seconds)
+                    + 30 * Math.sin(2 * Math.PI * baroreflex * seconds) + 15 * random.nextGaussian());
+            time += rrInterval;
+            times[i] = time / 1000.0;
+            values[i] = rrInterval;
+        }
+    }
+
+    /** Checks that the periodogram of the samples matches the direct one at every frequency. */
+    private static void assertMatchesDirect(LombScarglePeriodogram periodogram, double[] times, double[] values, int count) {
+
+        assertTrue(periodogram.compute(times, values, count));
+        double[] expected = new double[periodogram.getSize()];
+        double peak = 0;
+        for (int i = 0; i < expected.length; i++) {
+
+            expected[i] = directPower(times, values, count, periodogram.getFrequency(i));
+            peak = Math.max(peak, expected[i]);
+        }
+        assertTrue(peak > 0);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], periodogram.getPower(i), TOLERANCE * peak);
+    }
+
+    /** Returns the Lomb-Scargle power at a frequency with the periodogram scale, in O(n). */
+    static double directPower(double[] times, double[] values, int count, double frequency) {
+
+        double mean = 0;
+        for (int i = 0; i < count; i++)
+            mean += values[i];
+        mean /= count;
+
+        double omega = 2 * Math.PI * frequency;
+        double sin2 = 0;
+        double cos2 = 0;
+        for (int i = 0; i < count; i++) {
+
+            sin2 += Math.sin(2 * omega * times[i]);
+            cos2 += Math.cos(2 * omega * times[i]);
+        }
+        double tau = Math.atan2(sin2, cos2) / (2 * omega);
+
+        double cosTerm = 0;
+        double sinTerm = 0;
+        double cosSquares = 0;
+        double sinSquares = 0;
+        for (int i = 0; i < count; i++) {
+
+            double phase = omega * (times[i] - tau);
+            double cos = Math.cos(phase);
+            double sin = Math.sin(phase);
+            cosTerm += (values[i] - mean) * cos;
+            sinTerm += (values[i] - mean) * sin;
+            cosSquares += cos * cos;
+            sinSquares += sin * sin;
+        }
+        return (cosTerm * cosTerm / cosSquares + sinTerm * sinTerm / sinSquares) / (count * LombScarglePeriodogram.OVERSAMPLING);
+    }
+}
@@ -0,0 +1,136 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.agustinprats.myhrv.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks OrderStatistics against sorting the values it holds.
+ */
+public class OrderStatisticsTest {
+
+    /** Returns the median of sorted values, the mean of the two middle ones if there is an even number. */
+    static double sortedMedian(double[] sorted) {
+
+        int n = sorted.length;
+        if (n == 0)
+            return 0;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    /** Returns the median of the values by sorting them. */
+    static double median(List<Integer> values) {
+
+        double[] sorted = new double[values.size()];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = values.get(i);
+        Arrays.sort(sorted);
+        return sortedMedian(sorted);
+    }
+
+    /** Returns the median absolute deviation of the values by sorting them. */
+    static double mad(List<Integer> values) {
+
+        double median = median(values);
+        double[] deviations = new double[values.size()];
+        for (int i = 0; i < deviations.length; i++)
+            deviations[i] = Math.abs(values.get(i) - median);
+        Arrays.sort(deviations);
+        return sortedMedian(deviations);
+    }
+
+    @Test
+    public void emptyIsZero() {
+
+        OrderStatistics statistics = new OrderStatistics();
+        assertEquals(0, statistics.size());
+        assertEquals(0, statistics.getMedian(), 0);
+        assertEquals(0, statistics.getMad(), 0);
+    }
+
+    @Test
+    public void evenSizeAveragesTheMiddleValues() {
+
+        OrderStatistics statistics = new OrderStatistics();
+        statistics.add(800);
+        statistics.add(900);
+        assertEquals(850, statistics.getMedian(), 0);
+        assertEquals(50, statistics.getMad(), 0);
+
+        statistics.add(801);
+        statistics.add(1000);
+        assertEquals(850.5, statistics.getMedian(), 0);
+        assertEquals(50, statistics.getMad(), 0);
+    }
+
+    @Test
+    public void matchesSortedValues() {
+
+        Random random = new Random(1);
+        OrderStatistics statistics = new OrderStatistics();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 5000; i++) {
+
+            // Mostly adds so the size grows, with some repeated values
+            if (values.isEmpty() || random.nextInt(3) > 0) {
+
+                int value = 600 + random.nextInt(random.nextBoolean() ? 20 : 1200);
+                statistics.add(value);
+                values.add(value);
+            }
+            else {
+
+                int value = values.remove(random.nextInt(values.size()));
+                statistics.remove(value);
+            }
+
+            assertEquals(values.size(), statistics.size());
+            assertEquals(median(values), statistics.getMedian(), 0);
+            assertEquals(mad(values), statistics.getMad(), 0);
+
+            if (!values.isEmpty()) {
+
+                List<Integer> sorted = new ArrayList<Integer>(values);
+                Collections.sort(sorted);
+                int k = random.nextInt(sorted.size());
+                assertEquals((int) sorted.get(k), statistics.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void clampsValuesOutOfTheDomain() {
+
+        OrderStatistics statistics = new OrderStatistics();
+        statistics.add(-5);
+        statistics.add(OrderStatistics.MAX_VALUE + 100);
+        assertEquals(0, statistics.get(0));
+        assertEquals(OrderStatistics.MAX_VALUE, statistics.get(1));
+        assertEquals(2, statistics.count(0, OrderStatistics.MAX_VALUE));
+    }
+}
@@ -0,0 +1,203 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.agustinprats.myhrv.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the sliding windows and the range queries of RrIntervalList against a naive walk over
+ * the stored R-R intervals, the way the metrics were calculated before they were incremental.
+ */
+public class RrWindowTest {
+
+    private static final int SESSION_SIZE = 20000;
+
+    /** Adds a synthetic session with breathing, noise, outliers and out of range beats. */
+    private static void addSession(RrIntervalList list, long seed) {
+
+        Random random = new Random(seed);
+        long timestamp = 0;
+        for (int i = 0; i < SESSION_SIZE; i++) {
+
+            int rrInterval = (int) (850 + 120 * Math.sin(i * 0.55) + 30 * random.nextGaussian());
+            if (random.nextInt(200) == 0)
+                rrInterval *= 2;
+            if (random.nextInt(500) == 0)
+                rrInterval = 5000;
+            timestamp += rrInterval;
+            list.add(timestamp, rrInterval);
+        }
+    }
+
+    /** Returns the average heart rate of the fewest newest intervals that sum at least millis. */
+    private static double naiveHeartRate(RrIntervalList list, long millis) {
+
+        long sum = 0;
+        int count = 0;
+        for (int i = list.size() - 1; i >= 0; i--) {
+
+            sum += list.getRRInterval(i);
+            count++;
+            if (millis > 0 && sum >= millis) break;
+        }
+        double averageRR = count > 0 ? sum / count : 0;
+        return averageRR > 0 ? 60000 / averageRR : 0;
+    }
+
+    /** Returns the RMSSD of the fewest newest pairs of intervals that sum at least millis. */
+    private static double naiveRMSSD(RrIntervalList list, long millis) {
+
+        long squaredSum = 0;
+        long sum = 0;
+        int count = 0;
+        for (int i = list.size() - 1; i >= 1; i--) {
+
+            long diff = list.getRRInterval(i) - list.getRRInterval(i - 1);
+            squaredSum += diff * diff;
+            sum += list.getRRInterval(i) + list.getRRInterval(i - 1);
+            count += 2;
+            if (millis > 0 && sum >= millis) break;
+        }
+        return count > 0 ? Math.sqrt(squaredSum / count) : 0;
+    }
+
+    /** Returns the hrv score of the fewest newest pairs of intervals that sum at least millis. */
+    private static double naiveHRV(RrIntervalList list, long millis) {
+
+        double rmssd = naiveRMSSD(list, millis);
+        return rmssd > 0 ? Math.log(rmssd) * 20 : 0;
+    }
+
+    /** Returns the coherence score of the fewest newest intervals that sum at least millis. */
+    private static double naiveCoherence(RrIntervalList list, long millis) {
+
+        long sum = 0;
+        int count = 0;
+        int bfs = 0;
+        for (int i = list.size() - 1; i >= 0; i--) {
+
+            if (list.getBFS(i))
+                bfs++;
+            sum += list.getRRInterval(i);
+            count++;
+            if (millis > 0 && sum >= millis) break;
+        }
+        return count > 0 ? (100 * bfs) / count : 0;
+    }
+
+    @Test
+    public void instantMetricsMatchNaiveWalk() {
+
+        RrIntervalList list = new RrIntervalList();
+        Random random = new Random(1);
+        long timestamp = 0;
+        for (int i = 0; i < SESSION_SIZE; i++) {
+
+            int rrInterval = (int) (850 + 120 * Math.sin(i * 0.55) + 30 * random.nextGaussian());
+            timestamp += rrInterval;
+            list.add(timestamp, rrInterval);
+
+            assertEquals(naiveHeartRate(list, RrIntervalList.TIME_WINDOW), list.getInstantHeartRate(), 0);
+            assertEquals(naiveHRV(list, RrIntervalList.TIME_WINDOW), list.getInstantHRV(), 0);
+            assertEquals(naiveCoherence(list, RrIntervalList.TIME_WINDOW), list.getInstantCoherence(), 0);
+            if (i % 97 == 0) {
+
+                assertEquals(naiveHeartRate(list, 0), list.getHeartRate(), 0);
+                assertEquals(naiveHRV(list, 0), list.getHRV(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void horizonsMatchNaiveWalk() {
+
+        long[] horizons = { 45000, 300000 };
+        RrIntervalList list = new RrIntervalList(RrIntervalList.DEFAULT_CHART_SPAN, RrIntervalList.COHERENCE_BFS, horizons);
+        addSession(list, 2);
+
+        for (long horizon : horizons) {
+
+            RrWindow window = list.getHorizon(horizon);
+            assertEquals(horizon, window.getLength());
+            assertEquals(naiveHeartRate(list, horizon), window.getHeartRate(), 0);
+            assertEquals(naiveHRV(list, horizon), window.getHRV(), 0);
+            assertEquals(naiveCoherence(list, horizon), window.getCoherence(), 0);
+        }
+    }
+
+    @Test
+    public void rangeMetricsMatchNaiveScan() {
+
+        RrIntervalList list = new RrIntervalList();
+        addSession(list, 3);
+
+        Random random = new Random(4);
+        long last = list.getTimestamp(list.size() - 1);
+        double[] minMax = new double[2];
+        for (int query = 0; query < 500; query++) {
+
+            long begin = (long) (random.nextDouble() * last);
+            long end = begin + random.nextInt(600000);
+
+            long sum = 0;
+            long squaredSum = 0;
+            int count = 0;
+            int pairs = 0;
+            int bfs = 0;
+            double minHeartRate = 300.0;
+            double maxHeartRate = 0.0;
+            for (int i = 0; i < list.size(); i++) {
+
+                long timestamp = list.getTimestamp(i);
+                if (timestamp <= begin || timestamp >= end)
+                    continue;
+
+                sum += list.getRRInterval(i);
+                count++;
+                if (list.getBFS(i))
+                    bfs++;
+                if (count > 1) {
+
+                    long diff = list.getRRInterval(i) - list.getRRInterval(i - 1);
+                    squaredSum += diff * diff;
+                    pairs++;
+                }
+                minHeartRate = Math.min(minHeartRate, RrInterval.getHeartRate(list.getRRInterval(i)));
+                maxHeartRate = Math.max(maxHeartRate, RrInterval.getHeartRate(list.getRRInterval(i)));
+            }
+
+            RangeMetrics metrics = list.getMetrics(begin, end);
+            double averageRR = count > 0 ? sum / count : 0;
+            double rmssd = pairs > 0 ? Math.sqrt(squaredSum / (2 * pairs)) : 0;
+            assertEquals(count, metrics.getCount());
+            assertEquals(averageRR > 0 ? 60000 / averageRR : 0, metrics.getHeartRate(), 0);
+            assertEquals(rmssd, metrics.getRMSSD(), 0);
+            assertEquals(count > 0 ? (100 * bfs) / count : 0, metrics.getCoherence(), 0);
+
+            list.getMinMaxHeartRate(begin, end, minMax);
+            assertEquals(minHeartRate, minMax[0], 0);
+            assertEquals(maxHeartRate, minMax[1], 0);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks SampleEntropy against counting every pair of templates of the window with a tolerance of
+ * R_FACTOR times its standard deviation, while the level of the intervals shifts.
+ */
+public class SampleEntropyTest {
+
+    /** Error allowed in the sample entropy. Only the rounding of the logarithm. */
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void matchesBruteForceOverFixedWindow() {
+
+        int[] series = series(new Random(16), 3000);
+        int beats = 350;
+        SampleEntropy sampleEntropy = new SampleEntropy(beats * 60000L / RrInterval.MIN_HR);
+        for (int i = 0; i < series.length; i++) {
+
+            int begin = Math.max(0, i + 1 - beats);
+            sampleEntropy.add(series[i], begin);
+            assertEquals(sampleEntropy(series, begin, i + 1), sampleEntropy.getSampleEntropy(), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void matchesBruteForceOverTimeWindow() {
+
+        // Several intervals expire at once when a long one arrives, as in RrIntervalList
+        Random random = new Random(17);
+        int[] series = series(random, 3000);
+        for (int i = 0; i < series.length; i += 1 + random.nextInt(100))
+            series[i] = 1500 + random.nextInt(800);
+
+        int window = 120000;
+        SampleEntropy sampleEntropy = new SampleEntropy(window);
+        int begin = 0;
+        long sum = 0;
+        for (int i = 0; i < series.length; i++) {
+
+            sum += series[i];
+            while (sum > window) {
+
+                sum -= series[begin];
+                begin++;
+            }
+            sampleEntropy.add(series[i], begin);
+            assertEquals(sampleEntropy(series, begin, i + 1), sampleEntropy.getSampleEntropy(), TOLERANCE);
+        }
+    }
+
+    /** Returns intervals with respiratory sinus arrhythmia whose level shifts every 1000 beats. */
+    private static int[] series(Random random, int count) {
+
+        int[] series = new int[count];
+        for (int i = 0; i < count; i++) {
+
+            int level = (i / 1000) % 2 == 0 ? 850 : 650;
+            series[i] = (int) (level + 40 * Math.sin(i * Math.PI / 5) + 25 * random.nextGaussian());
+        }
+        return series;
+    }
+
+    /** Returns the sample entropy of the intervals [begin, end) comparing every pair of templates. */
+    static double sampleEntropy(int[] series, int begin, int end) {
+
+        int count = end - begin;
+        if (count < 2)
+            return -1;
+        double mean = 0;
+        for (int i = begin; i < end; i++)
+            mean += series[i];
+        mean /= count;
+        double variance = 0;
+        for (int i = begin; i < end; i++)
+            variance += (series[i] - mean) * (series[i] - mean);
+        double r = SampleEntropy.R_FACTOR * Math.sqrt(variance / (count - 1));
+
+        long countB = 0;
+        long countA = 0;
+        for (int i = begin; i < end - SampleEntropy.M; i++) {
+
+            for (int j = i + 1; j < end - SampleEntropy.M; j++) {
+
+                if (Math.abs(series[j] - series[i]) > r || Math.abs(series[j + 1] - series[i + 1]) > r)
+                    continue;
+
+                countB++;
+                if (Math.abs(series[j + 2] - series[i + 2]) <= r)
+                    countA++;
+            }
+        }
+        if (countA == 0 || countB == 0)
+            return -1;
+        return Math.log((double) countB / countA);
+    }
+}
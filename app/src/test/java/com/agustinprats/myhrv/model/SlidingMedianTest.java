@@ -0,0 +1,75 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.agustinprats.myhrv.model;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks SlidingMedian against sorting the last values added for the window sizes used to
+ * validate R-R intervals.
+ */
+public class SlidingMedianTest {
+
+    @Test
+    public void matchesSortedWindow() {
+
+        Random random = new Random(4);
+        for (int size : new int[] { 1, 2, 11, 31, 91 }) {
+
+            SlidingMedian median = new SlidingMedian(size);
+            ArrayDeque<Integer> window = new ArrayDeque<Integer>();
+            for (int i = 0; i < 5000; i++) {
+
+                // Outliers beyond the largest value counted are clamped
+                int value = random.nextInt(10) == 0 ? random.nextInt(4500) : 800 + random.nextInt(300);
+                median.add(value);
+                window.addLast(Math.min(value, OrderStatistics.MAX_VALUE));
+                if (window.size() > size)
+                    window.removeFirst();
+
+                ArrayList<Integer> values = new ArrayList<Integer>(window);
+                assertEquals(window.size(), median.size());
+                assertEquals(OrderStatisticsTest.median(values), median.getMedian(), 0);
+                assertEquals(OrderStatisticsTest.mad(values), median.getMad(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheWindow() {
+
+        SlidingMedian median = new SlidingMedian(11);
+        for (int i = 0; i < 20; i++)
+            median.add(900 + i);
+        median.clear();
+        assertEquals(0, median.size());
+        assertEquals(0, median.getMedian(), 0);
+
+        median.add(700);
+        assertEquals(700, median.getMedian(), 0);
+        assertEquals(0, median.getMad(), 0);
+    }
+}
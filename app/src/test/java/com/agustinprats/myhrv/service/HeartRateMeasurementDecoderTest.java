@@ -0,0 +1,174 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.agustinprats.myhrv.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Heart Rate Measurement decoder against known payloads and against an independent
+ * reading of every combination of flags and lengths.
+ */
+public class HeartRateMeasurementDecoderTest {
+
+    private final HeartRateMeasurementDecoder _decoder = new HeartRateMeasurementDecoder();
+    private final int[] _rrIntervals = new int[HeartRateMeasurementDecoder.MAX_RR_INTERVALS];
+
+    /** Returns the bytes of the specified values. */
+    private static byte[] bytes(int... values) {
+
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = (byte) values[i];
+        return result;
+    }
+
+    @Test
+    public void decodesUint8HeartRateWithoutOptionalFields() {
+
+        assertTrue(_decoder.decode(bytes(0x00, 72), 0, 2, _rrIntervals));
+        assertEquals(72, _decoder.getHeartRate());
+        assertEquals(HeartRateMeasurementDecoder.SENSOR_CONTACT_NOT_SUPPORTED, _decoder.getSensorContact());
+        assertEquals(-1, _decoder.getEnergyExpended());
+        assertFalse(_decoder.hasRrIntervals());
+        assertEquals(0, _decoder.getRrIntervalCount());
+    }
+
+    @Test
+    public void decodesUint16HeartRateAndEnergyExpended() {
+
+        byte[] value = bytes(HeartRateMeasurementDecoder.FLAG_HEART_RATE_UINT16 | HeartRateMeasurementDecoder.FLAG_ENERGY_EXPENDED,
+                0x2C, 0x01, 0x10, 0x27);
+        assertTrue(_decoder.decode(value, 0, value.length, _rrIntervals));
+        assertEquals(300, _decoder.getHeartRate());
+        assertEquals(10000, _decoder.getEnergyExpended());
+    }
+
+    @Test
+    public void decodesSensorContact() {
+
+        int supported = HeartRateMeasurementDecoder.FLAG_SENSOR_CONTACT_SUPPORTED;
+        int detected = HeartRateMeasurementDecoder.FLAG_SENSOR_CONTACT_DETECTED;
+
+        _decoder.decode(bytes(supported | detected, 60), 0, 2, _rrIntervals);
+        assertEquals(HeartRateMeasurementDecoder.SENSOR_CONTACT_DETECTED, _decoder.getSensorContact());
+        _decoder.decode(bytes(supported, 60), 0, 2, _rrIntervals);
+        assertEquals(HeartRateMeasurementDecoder.SENSOR_CONTACT_NOT_DETECTED, _decoder.getSensorContact());
+        _decoder.decode(bytes(detected, 60), 0, 2, _rrIntervals);
+        assertEquals(HeartRateMeasurementDecoder.SENSOR_CONTACT_NOT_SUPPORTED, _decoder.getSensorContact());
+    }
+
+    @Test
+    public void decodesRrIntervalsAfterEnergyExpended() {
+
+        byte[] value = bytes(0xFF, 0xFF, HeartRateMeasurementDecoder.FLAG_ENERGY_EXPENDED | HeartRateMeasurementDecoder.FLAG_RR_INTERVALS,
+                65, 0x05, 0x00, 0x00, 0x04, 0x9A, 0x03, 0xFF, 0xFF);
+        assertTrue(_decoder.decode(value, 2, value.length - 2, _rrIntervals));
+        assertEquals(65, _decoder.getHeartRate());
+        assertEquals(5, _decoder.getEnergyExpended());
+        assertTrue(_decoder.hasRrIntervals());
+        assertEquals(3, _decoder.getRrIntervalCount());
+        assertArrayEquals(new int[] { 1024, 922, 65535 }, Arrays.copyOf(_rrIntervals, 3));
+    }
+
+    @Test
+    public void ignoresOddByteAndIntervalsBeyondTheArray() {
+
+        byte[] value = new byte[2 + 2 * 12 + 1];
+        value[0] = HeartRateMeasurementDecoder.FLAG_RR_INTERVALS;
+        value[1] = 70;
+        for (int i = 0; i < 12; i++)
+            value[2 + 2 * i] = (byte) (i + 1);
+
+        int[] rrIntervals = new int[4];
+        assertTrue(_decoder.decode(value, 0, value.length, rrIntervals));
+        assertEquals(4, _decoder.getRrIntervalCount());
+        assertArrayEquals(new int[] { 1, 2, 3, 4 }, rrIntervals);
+    }
+
+    @Test
+    public void rejectsTruncatedMeasurements() {
+
+        assertFalse(_decoder.decode(null, 0, 0, _rrIntervals));
+        assertFalse(_decoder.decode(bytes(0x00), 0, 1, _rrIntervals));
+        assertFalse(_decoder.decode(bytes(HeartRateMeasurementDecoder.FLAG_HEART_RATE_UINT16, 60), 0, 2, _rrIntervals));
+        assertFalse(_decoder.decode(bytes(HeartRateMeasurementDecoder.FLAG_ENERGY_EXPENDED, 60, 1), 0, 3, _rrIntervals));
+        assertFalse(_decoder.decode(bytes(0x00, 60), 1, 2, _rrIntervals));
+        assertEquals(0, _decoder.getHeartRate());
+        assertEquals(0, _decoder.getRrIntervalCount());
+    }
+
+    @Test
+    public void decodesEveryFlagsAndLength() {
+
+        Random random = new Random(1);
+        for (int flags = 0; flags < 256; flags++) {
+
+            for (int length = 0; length <= 22; length++) {
+
+                // The measurement starts after a byte so the offset is exercised
+                byte[] value = new byte[length + 3];
+                random.nextBytes(value);
+                value[1] = (byte) flags;
+
+                int heartRateSize = (flags & HeartRateMeasurementDecoder.FLAG_HEART_RATE_UINT16) != 0 ? 2 : 1;
+                int energySize = (flags & HeartRateMeasurementDecoder.FLAG_ENERGY_EXPENDED) != 0 ? 2 : 0;
+                int required = 1 + heartRateSize + energySize;
+                boolean decoded = _decoder.decode(value, 1, length, _rrIntervals);
+                assertEquals(length >= required, decoded);
+                if (!decoded)
+                    continue;
+
+                int heartRate = heartRateSize == 2 ? uint16(value, 2) : value[2] & 0xFF;
+                assertEquals(heartRate, _decoder.getHeartRate());
+                assertEquals(energySize > 0 ? uint16(value, 2 + heartRateSize) : -1, _decoder.getEnergyExpended());
+
+                int count = (flags & HeartRateMeasurementDecoder.FLAG_RR_INTERVALS) != 0 ?
+                        Math.min(_rrIntervals.length, (length - required) / 2) : 0;
+                assertEquals(count, _decoder.getRrIntervalCount());
+                for (int i = 0; i < count; i++)
+                    assertEquals(uint16(value, 1 + required + 2 * i), _rrIntervals[i]);
+            }
+        }
+    }
+
+    @Test
+    public void convertsRrIntervalsToMillis() {
+
+        assertEquals(0, HeartRateMeasurementDecoder.toMillis(0));
+        assertEquals(1000, HeartRateMeasurementDecoder.toMillis(1024));
+        assertEquals(500, HeartRateMeasurementDecoder.toMillis(512));
+        assertEquals(1, HeartRateMeasurementDecoder.toMillis(1));
+        assertEquals(63999, HeartRateMeasurementDecoder.toMillis(65535));
+    }
+
+    /** Reads a little endian unsigned 16 bits integer. */
+    private static int uint16(byte[] value, int position) {
+
+        return (value[position] & 0xFF) | ((value[position + 1] & 0xFF) << 8);
+    }
+}
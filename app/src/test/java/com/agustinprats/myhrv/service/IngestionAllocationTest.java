@@ -0,0 +1,108 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.agustinprats.myhrv.service;
+
+import com.agustinprats.myhrv.model.RrIntervalList;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the R-R intervals go from the raw measurement bytes to the list without allocating
+ * memory in steady state: decoding, queueing and adding them with every metric calculated.
+ * Only the storage of the session grows, by doubling, so the measured beats avoid its growth.
+ */
+public class IngestionAllocationTest {
+
+    private static final int WARM_UP_PACKETS = 40000;
+    private static final int MEASURED_PACKETS = 10000;
+
+    private final HeartRateMeasurementDecoder _decoder = new HeartRateMeasurementDecoder();
+    private final RrIntervalQueue _queue = new RrIntervalQueue(16, HeartRateMeasurementDecoder.MAX_RR_INTERVALS);
+    private final int[] _rrIntervals = new int[HeartRateMeasurementDecoder.MAX_RR_INTERVALS];
+    private final byte[] _measurement = new byte[2 + 2 * HeartRateMeasurementDecoder.MAX_RR_INTERVALS];
+    private final RrIntervalList _intervals = new RrIntervalList();
+    private long _timestamp = 0;
+    private int _packet = 0;
+    private int _beat = 0;
+
+    /** Adds the dequeued R-R intervals to the list. */
+    private final RrIntervalQueue.Consumer _consumer = new RrIntervalQueue.Consumer() {
+
+        @Override
+        public void onPacket(int session, long timestamp, int[] rrIntervals, int offset, int count) {
+
+            _intervals.addAll(timestamp, rrIntervals, offset, count);
+        }
+    };
+
+    /** Encodes a measurement of one to three R-R intervals and passes it through the ingestion path. */
+    private void ingestPacket() {
+
+        int count = 1 + _packet++ % 3;
+        _measurement[0] = HeartRateMeasurementDecoder.FLAG_RR_INTERVALS;
+        _measurement[1] = 70;
+        for (int i = 0; i < count; i++) {
+
+            // A steady breathing rhythm keeps the coherence zone, so its transition log doesn't grow
+            int rrInterval = (int) (870 + 90 * Math.sin(_beat++ * Math.PI / 5)) * HeartRateMeasurementDecoder.RR_INTERVAL_RESOLUTION / 1000;
+            _measurement[2 + 2 * i] = (byte) rrInterval;
+            _measurement[3 + 2 * i] = (byte) (rrInterval >> 8);
+        }
+
+        _decoder.decode(_measurement, 0, 2 + 2 * count, _rrIntervals);
+        for (int i = 0; i < _decoder.getRrIntervalCount(); i++) {
+
+            _rrIntervals[i] = HeartRateMeasurementDecoder.toMillis(_rrIntervals[i]);
+            _timestamp += _rrIntervals[i];
+        }
+        _queue.offer(0, _timestamp, _rrIntervals, _decoder.getRrIntervalCount());
+        _queue.drain(_consumer);
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        // Warms up the compiler and grows the list so the measured beats fit in its arrays
+        for (int i = 0; i < WARM_UP_PACKETS; i++)
+            ingestPacket();
+        assertTrue("The measured beats would grow the list",
+                Integer.highestOneBit(_intervals.size()) == Integer.highestOneBit(_intervals.size() + 3 * MEASURED_PACKETS));
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_PACKETS; i++)
+            ingestPacket();
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, allocated);
+    }
+}
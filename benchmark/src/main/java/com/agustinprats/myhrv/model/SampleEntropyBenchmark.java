@@ -0,0 +1,139 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of updating the sample entropy of a window with a new beat, incrementally with
+ * SampleEntropy and by comparing every pair of templates again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleEntropyBenchmark {
+
+    /** Length of the repeated R-R interval series. Longer than any window. */
+    private static final int SERIES_LENGTH = 8192;
+
+    /** Number of beats in the window. */
+    @Param({ "300", "1000", "5000" })
+    public int beats;
+
+    private final int[] _series = new int[SERIES_LENGTH];
+    private SampleEntropy _sampleEntropy;
+    private long _added;
+
+    @Setup
+    public void setUp() {
+
+        // Respiratory sinus arrhythmia plus noise
+        Random random = new Random(16);
+        for (int i = 0; i < SERIES_LENGTH; i++)
+            _series[i] = (int) (850 + 60 * Math.sin(i * Math.PI / 5) + 25 * random.nextGaussian());
+
+        _sampleEntropy = new SampleEntropy((long) beats * 60000 / RrInterval.MIN_HR);
+        _added = 0;
+        while (_added < beats)
+            addNext();
+
+        // Both benchmarks calculate the same value
+        if (_sampleEntropy.getSampleEntropy() != sampleEntropy(_series, 0, _added))
+            throw new IllegalStateException("The incremental sample entropy differs from the brute force one");
+    }
+
+    @Benchmark
+    public double incremental() {
+
+        addNext();
+        return _sampleEntropy.getSampleEntropy();
+    }
+
+    @Benchmark
+    public double bruteForce() {
+
+        _added++;
+        return sampleEntropy(_series, _added - beats, _added);
+    }
+
+    /** Adds the next interval of the series keeping the last beats in the window. */
+    private void addNext() {
+
+        _sampleEntropy.add(_series[(int) (_added % SERIES_LENGTH)], Math.max(0, _added + 1 - beats));
+        _added++;
+    }
+
+    /**
+     * Returns the sample entropy of the intervals [begin, end) of a repeated series comparing
+     * every pair of templates, or -1 if there are no matching templates.
+     */
+    static double sampleEntropy(int[] series, long begin, long end) {
+
+        int count = (int) (end - begin);
+        long sum = 0;
+        long squaredSum = 0;
+        for (long i = begin; i < end; i++) {
+
+            long value = series[(int) (i % series.length)];
+            sum += value;
+            squaredSum += value * value;
+        }
+        double variance = (count * squaredSum - sum * sum) / ((double) count * (count - 1));
+        double r = SampleEntropy.R_FACTOR * Math.sqrt(Math.max(0, variance));
+
+        long countB = 0;
+        long countA = 0;
+        for (long i = begin; i < end - SampleEntropy.M; i++) {
+
+            int x = series[(int) (i % series.length)];
+            int y = series[(int) ((i + 1) % series.length)];
+            int z = series[(int) ((i + 2) % series.length)];
+            for (long j = i + 1; j < end - SampleEntropy.M; j++) {
+
+                if (Math.abs(series[(int) (j % series.length)] - x) > r
+                        || Math.abs(series[(int) ((j + 1) % series.length)] - y) > r)
+                    continue;
+
+                countB++;
+                if (Math.abs(series[(int) ((j + 2) % series.length)] - z) <= r)
+                    countA++;
+            }
+        }
+
+        if (countA == 0 || countB == 0)
+            return -1;
+        return Math.log((double) countB / countA);
+    }
+}
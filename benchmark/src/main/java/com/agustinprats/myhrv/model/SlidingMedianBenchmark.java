@@ -0,0 +1,153 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adding a value to a SlidingMedian and reading its median and MAD, compared to
+ * sorting a copy of the window, for the window sizes used to validate R-R intervals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingMedianBenchmark {
+
+    /** Number of random values added in turn. A power of two. */
+    private static final int VALUES = 4096;
+
+    /** Number of values in the window. */
+    @Param({ "11", "31", "51", "71", "91" })
+    public int window;
+
+    private final int[] _values = new int[VALUES];
+    private int _next;
+
+    private SlidingMedian _slidingMedian;
+
+    // Window of the sort based reference and its work arrays
+    private int[] _window;
+    private int _oldest;
+    private int[] _sorted;
+    private double[] _deviations;
+
+    @Setup
+    public void setUp() {
+
+        // Mostly normal intervals with some artifacts
+        Random random = new Random(18);
+        for (int i = 0; i < VALUES; i++)
+            _values[i] = random.nextInt(10) == 0 ? 300 + random.nextInt(2000) : 800 + random.nextInt(300);
+
+        _slidingMedian = new SlidingMedian(window);
+        _window = new int[window];
+        _sorted = new int[window];
+        _deviations = new double[window];
+        for (_next = 0; _next < window; _next++) {
+
+            _slidingMedian.add(_values[_next]);
+            _window[_next] = _values[_next];
+        }
+        _oldest = 0;
+    }
+
+    @Benchmark
+    public double slidingMedian() {
+
+        _slidingMedian.add(nextValue());
+        return _slidingMedian.getMedian();
+    }
+
+    @Benchmark
+    public double slidingMad() {
+
+        _slidingMedian.add(nextValue());
+        return _slidingMedian.getMad();
+    }
+
+    @Benchmark
+    public double sortedMedian() {
+
+        replaceOldest();
+        System.arraycopy(_window, 0, _sorted, 0, window);
+        Arrays.sort(_sorted);
+        return median(_sorted);
+    }
+
+    @Benchmark
+    public double sortedMad() {
+
+        replaceOldest();
+        System.arraycopy(_window, 0, _sorted, 0, window);
+        Arrays.sort(_sorted);
+        double median = median(_sorted);
+        for (int i = 0; i < window; i++)
+            _deviations[i] = Math.abs(_sorted[i] - median);
+        Arrays.sort(_deviations);
+        return median(_deviations);
+    }
+
+    /** Returns the next value and advances to the following one. */
+    private int nextValue() {
+
+        return _values[_next++ & (VALUES - 1)];
+    }
+
+    /** Replaces the oldest value of the reference window with the next one. */
+    private void replaceOldest() {
+
+        _window[_oldest] = nextValue();
+        _oldest = (_oldest + 1) % window;
+    }
+
+    /** Returns the median of a sorted array. */
+    private static double median(int[] sorted) {
+
+        int middle = sorted.length / 2;
+        if (sorted.length % 2 != 0)
+            return sorted[middle];
+        return (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    /** Returns the median of a sorted array. */
+    private static double median(double[] sorted) {
+
+        int middle = sorted.length / 2;
+        if (sorted.length % 2 != 0)
+            return sorted[middle];
+        return (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
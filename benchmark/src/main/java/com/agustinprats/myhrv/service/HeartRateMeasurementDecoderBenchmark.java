@@ -0,0 +1,82 @@
+/* Copyright (c) 2013-2014 Agustín Prats
+ *
+ * This file is part of HeartWave.
+ *
+ *  HeartWave is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HeartWave is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with HeartWave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.agustinprats.myhrv.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding a Heart Rate Measurement with an 8 bit heart rate, energy expended and
+ * a number of R-R intervals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeartRateMeasurementDecoderBenchmark {
+
+    /** Number of R-R intervals in the measurement. */
+    @Param({ "1", "4", "8" })
+    public int rrIntervals;
+
+    private final HeartRateMeasurementDecoder _decoder = new HeartRateMeasurementDecoder();
+    private final int[] _rrIntervals = new int[HeartRateMeasurementDecoder.MAX_RR_INTERVALS];
+    private byte[] _value;
+
+    @Setup
+    public void setUp() {
+
+        _value = new byte[4 + 2 * rrIntervals];
+        _value[0] = (byte) (HeartRateMeasurementDecoder.FLAG_SENSOR_CONTACT_SUPPORTED
+                | HeartRateMeasurementDecoder.FLAG_SENSOR_CONTACT_DETECTED
+                | HeartRateMeasurementDecoder.FLAG_ENERGY_EXPENDED
+                | HeartRateMeasurementDecoder.FLAG_RR_INTERVALS);
+        _value[1] = 70;
+        _value[2] = 12;
+        for (int i = 0; i < rrIntervals; i++) {
+
+            int rrInterval = 880 + 16 * i;
+            _value[4 + 2 * i] = (byte) rrInterval;
+            _value[5 + 2 * i] = (byte) (rrInterval >> 8);
+        }
+    }
+
+    @Benchmark
+    public int decode() {
+
+        _decoder.decode(_value, 0, _value.length, _rrIntervals);
+        int sum = 0;
+        for (int i = 0; i < _decoder.getRrIntervalCount(); i++)
+            sum += HeartRateMeasurementDecoder.toMillis(_rrIntervals[i]);
+        return sum;
+    }
+}